@@ -0,0 +1,233 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+/**
+ * Solves any number of input files in one JVM, so later files run on already compiled code.
+ * Arguments are files, directories (every *.in or *.in.gz file below them) and glob patterns such as
+ * "inputs/level6_*.in". Each file is solved by the level its name starts with (levelN_...), or by
+ * --level N. Files are processed --files N at a time, and the run ends with a throughput summary
+ * per file.
+ *
+ * Outputs go to --output-dir DIR (default outputs), named after the input with .in replaced by .out;
+ * compressed inputs get compressed outputs.
+ * All other options are passed on to the levels, so --threads, --no-solution-cache, --table and
+ * the rest work as they do for a single level.
+ */
+public class BatchRunner {
+
+    private static final class Job {
+        final Path input;
+        final Path output;
+        final int level;
+        int cases;
+        long nanos;
+        Exception failure;
+
+        Job(Path input, Path output, int level) {
+            this.input = input;
+            this.output = output;
+            this.level = level;
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (!run(args)) {
+                System.exit(1);
+            }
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    /** Runs the batch and returns whether every file was solved. */
+    static boolean run(String[] args) throws Exception {
+        List<String> patterns = positional(args);
+        if (patterns.isEmpty()) {
+            throw new IllegalArgumentException("Usage: java BatchRunner [options] FILE|DIR|GLOB...");
+        }
+
+        String outputOption = Options.value(args, "--output-dir");
+        Path outputDir = Paths.get(outputOption != null ? outputOption : "outputs");
+        Files.createDirectories(outputDir);
+        String levelOption = Options.value(args, "--level");
+
+        List<Job> jobs = new ArrayList<>();
+        Map<Path, Path> outputs = new HashMap<>();
+        for (Path input : expand(patterns)) {
+            String fileName = input.getFileName().toString();
+            int level = (levelOption != null) ? Integer.parseInt(levelOption) : Levels.level(fileName);
+            Path output = outputDir.resolve(fileName.replace(".in", ".out"));
+            Path clash = outputs.put(output, input);
+            if (clash != null) {
+                throw new IllegalArgumentException(clash + " and " + input + " would both write " + output);
+            }
+            jobs.add(new Job(input, output, level));
+        }
+        if (jobs.isEmpty()) {
+            System.out.println("No input files found");
+            return true;
+        }
+
+        Set<Integer> levels = new TreeSet<>();
+        for (Job job : jobs) {
+            levels.add(job.level);
+        }
+        for (int level : levels) {
+            Levels.configure(level, args);
+        }
+
+        String filesOption = Options.value(args, "--files");
+        int concurrent = (filesOption != null) ? Integer.parseInt(filesOption)
+                : Math.min(jobs.size(), Runtime.getRuntime().availableProcessors());
+        if (concurrent < 1) {
+            throw new IllegalArgumentException("--files must be at least 1, got " + concurrent);
+        }
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrent);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (Job job : jobs) {
+                running.add(pool.submit(() -> solve(job)));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        for (int level : levels) {
+            Levels.finish(level, args);
+        }
+        return printSummary(jobs, elapsed);
+    }
+
+    // Arguments that are neither options nor option values
+    private static List<String> positional(String[] args) {
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                if (!Options.FLAGS.contains(args[i])) {
+                    i++;
+                }
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        return positional;
+    }
+
+    /** Input files named by the arguments, in argument order and sorted within each argument. */
+    static List<Path> expand(List<String> patterns) throws IOException {
+        Set<Path> inputs = new LinkedHashSet<>();
+        for (String pattern : patterns) {
+            List<Path> matches;
+            if (pattern.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0)) {
+                matches = glob(pattern);
+                if (matches.isEmpty()) {
+                    System.out.println("Warning: No files match " + pattern);
+                }
+            } else {
+                Path path = Paths.get(pattern);
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> files = Files.walk(path)) {
+                        matches = files.filter(file -> Files.isRegularFile(file) && isInput(file.getFileName().toString()))
+                                .sorted().collect(Collectors.toList());
+                    }
+                } else if (Files.isRegularFile(path)) {
+                    matches = List.of(path);
+                } else {
+                    throw new NoSuchFileException(pattern, null, "no such file or directory");
+                }
+            }
+            for (Path match : matches) {
+                inputs.add(match.normalize());
+            }
+        }
+        return new ArrayList<>(inputs);
+    }
+
+    private static boolean isInput(String fileName) {
+        return fileName.endsWith(".in") || fileName.endsWith(".in.gz");
+    }
+
+    // Walks the directories before the first wildcard and keeps the files the pattern matches
+    private static List<Path> glob(String pattern) throws IOException {
+        Path base = Paths.get("");
+        Path literal = Paths.get(pattern);
+        for (Path part : literal) {
+            if (part.toString().chars().anyMatch(c -> "*?[{".indexOf(c) >= 0)) {
+                break;
+            }
+            base = base.resolve(part);
+        }
+        if (literal.isAbsolute()) {
+            base = literal.getRoot().resolve(base);
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        boolean relative = base.toString().isEmpty();
+        Path start = relative ? Paths.get(".") : base;
+        if (!Files.isDirectory(start)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.walk(start)) {
+            return files.map(file -> relative ? start.relativize(file) : file)
+                    .filter(file -> matcher.matches(file) && Files.isRegularFile(file))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static void solve(Job job) {
+        long start = System.nanoTime();
+        try {
+            job.cases = Levels.processFile(job.level, job.input.toString(), job.output.toString());
+            System.out.println("Output written to: " + job.output);
+        } catch (Exception e) {
+            job.failure = e;
+            System.err.println("Error: " + job.input + ": " + e.getMessage());
+        }
+        job.nanos = System.nanoTime() - start;
+    }
+
+    // One line per file in input order plus a total; returns whether every file succeeded
+    private static boolean printSummary(List<Job> jobs, long elapsed) throws IOException {
+        System.out.println();
+        System.out.println(String.format("%-40s %5s %10s %9s %12s %9s", "File", "Level", "Cases", "Seconds",
+                "Cases/s", "MB/s"));
+
+        int failed = 0;
+        long totalCases = 0;
+        long totalBytes = 0;
+        for (Job job : jobs) {
+            long bytes = Files.size(job.input);
+            double seconds = job.nanos / 1e9;
+            String name = job.input.toString();
+            if (job.failure != null) {
+                failed++;
+                System.out.println(String.format("%-40s %5d FAILED: %s", name, job.level, job.failure.getMessage()));
+                continue;
+            }
+            totalCases += job.cases;
+            totalBytes += bytes;
+            System.out.println(String.format("%-40s %5d %10d %9.3f %12.1f %9.2f", name, job.level, job.cases,
+                    seconds, job.cases / seconds, bytes / 1e6 / seconds));
+        }
+
+        double seconds = elapsed / 1e9;
+        System.out.println(String.format("%-40s %5s %10d %9.3f %12.1f %9.2f", "Total (wall clock)", "",
+                totalCases, seconds, totalCases / seconds, totalBytes / 1e6 / seconds));
+        if (failed > 0) {
+            System.out.println(failed + " of " + jobs.size() + " files failed");
+        }
+        return failed == 0;
+    }
+}
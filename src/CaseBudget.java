@@ -0,0 +1,107 @@
+/**
+ * Per-case time budget of Level5 and Level6, set with --case-budget MS. Each case gets a Deadline
+ * when its solve starts; the long searches (Level6's A* and the waypoint detours of both levels)
+ * stop once it has passed, and the case is answered with the best safe candidate the cheap
+ * strategies still find, or with the unsafe direct fallback. Without the option cases run to the
+ * end as before.
+ *
+ * The budget also counts, for the report at the end of a run, the cases that hit their deadline
+ * and the cases answered with the unsafe fallback, and warns about the first few of the latter.
+ */
+final class CaseBudget {
+
+    /** Deadline that never passes, for solves outside a run such as building the answer table. */
+    static final Deadline NEVER = new Deadline(0, false);
+
+    /** No budget: every case runs to the end. */
+    static final CaseBudget UNLIMITED = new CaseBudget(0);
+
+    // Searches check the clock only every this many steps
+    static final int CHECK_INTERVAL = 1024;
+
+    // Unsafe fallbacks warned about one by one; later ones are only counted
+    private static final int MAX_WARNINGS = 20;
+
+    private final long nanos;
+    private long deadlineHits;
+    private long unsafeFallbacks;
+
+    private CaseBudget(long nanos) {
+        this.nanos = nanos;
+    }
+
+    /** --case-budget MS from the command line. */
+    static CaseBudget fromArgs(String[] args) {
+        String budget = Options.value(args, "--case-budget");
+        if (budget == null) {
+            return UNLIMITED;
+        }
+        long millis = Long.parseLong(budget);
+        if (millis < 1) {
+            throw new IllegalArgumentException("--case-budget must be at least 1 ms, got " + millis);
+        }
+        return new CaseBudget(millis * 1_000_000L);
+    }
+
+    /** Deadline of a case whose solve starts now. */
+    Deadline start() {
+        return (nanos == 0) ? NEVER : new Deadline(System.nanoTime() + nanos, true);
+    }
+
+    /** Counts the case if its deadline passed while it was solved. */
+    void finish(Deadline deadline) {
+        if (deadline.hit) {
+            synchronized (this) {
+                deadlineHits++;
+            }
+        }
+    }
+
+    /** Counts and reports a case answered with the unsafe fallback. */
+    void unsafeFallback(int index, Deadline deadline) {
+        long count;
+        synchronized (this) {
+            count = ++unsafeFallbacks;
+        }
+        if (count <= MAX_WARNINGS) {
+            System.err.println("Warning: case " + index + " ended on the unsafe fallback"
+                    + (deadline.hit ? " after hitting its deadline" : "")
+                    + (count == MAX_WARNINGS ? "; further ones are only counted" : ""));
+        }
+    }
+
+    synchronized long deadlineHits() {
+        return deadlineHits;
+    }
+
+    synchronized long unsafeFallbacks() {
+        return unsafeFallbacks;
+    }
+
+    /** One line for the report at the end of a run. */
+    String summary() {
+        String limit = (nanos == 0) ? "unlimited" : (nanos / 1_000_000L) + " ms per case";
+        return "Case budget: " + limit + ", " + deadlineHits() + " deadline hits, "
+                + unsafeFallbacks() + " unsafe fallbacks";
+    }
+
+    /** When the solve of one case has to stop; used by the thread solving that case only. */
+    static final class Deadline {
+        private final long at;
+        private final boolean limited;
+        private boolean hit;
+
+        private Deadline(long at, boolean limited) {
+            this.at = at;
+            this.limited = limited;
+        }
+
+        /** True once the deadline has passed; stays true from then on. */
+        boolean expired() {
+            if (limited && !hit && System.nanoTime() - at >= 0) {
+                hit = true;
+            }
+            return hit;
+        }
+    }
+}
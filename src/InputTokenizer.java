@@ -0,0 +1,581 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the integers of a level input straight from its bytes: signed decimal ints separated by
+ * spaces, tabs or commas, one case per line. Nothing is decoded into Strings unless an error message
+ * needs the offending token. Errors carry the file name, line and column.
+ *
+ * Bytes come from a Source one buffer at a time, so a file is read through memory-mapped windows and
+ * other inputs can hand over buffers as they fill them; numbers may span two buffers. A .gz file is
+ * inflated on a thread of its own while the tokenizer parses the chunks inflated before.
+ */
+final class InputTokenizer implements Closeable {
+
+    /** Supplies the input one buffer at a time. */
+    interface Source extends Closeable {
+        /** The next buffer of input, or null at the end. */
+        ByteBuffer next() throws IOException;
+    }
+
+    /**
+     * Folds the ints of a line, or of one chunk of it, into a running result; see reduceLine. The
+     * reducer of a chunk is filled on a pool thread and merged on the calling one.
+     */
+    interface LineReducer<R extends LineReducer<R>> {
+        /** Folds in values[0, count) and returns how many it took; it stops before a value it refuses. */
+        int add(int[] values, int count);
+
+        /** A fresh reducer for a chunk. */
+        R empty();
+
+        /** Folds in the result of the chunk that follows the ones already in this reducer. */
+        void merge(R next);
+    }
+
+    // Mapped windows stay well below the 2 GB limit of a single mapping
+    private static final long WINDOW = 1L << 30;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    // Inflated chunks in flight between the inflating thread and the tokenizer
+    private static final int INFLATED_CHUNK = 1 << 18;
+    private static final int INFLATED_CHUNKS = 4;
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    // nextInts and line chunks parse up to this many bytes at a time, enough for a batch of a few thousand paces
+    private static final int SCRATCH = 1 << 14;
+    // Every int takes at least two bytes with its separator, so a full scratch fits in this many
+    private static final int SCRATCH_INTS = SCRATCH / 2;
+    private static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+    // Digits of the longest int nextInts parses itself; longer tokens go through nextInt
+    private static final int MAX_PLAIN_DIGITS = 10;
+
+    private final Source source;
+    private final String name;
+    private ByteBuffer buffer = EMPTY;
+    private boolean exhausted;
+    private int line = 1;
+    private int column = 1;
+    private int tokenLine;
+    private int tokenColumn;
+    private final Scan scan = new Scan();
+    // Where the part of the current buffer reduceLine found too short to split ends, so the batches
+    // read through it do not look again
+    private ByteBuffer unsplitBuffer;
+    private int unsplitEnd;
+
+    InputTokenizer(Source source, String name) {
+        this.source = source;
+        this.name = name;
+    }
+
+    /**
+     * Tokenizer over a file read through read-only memory-mapped windows, or inflated as it is read
+     * if the file name ends in .gz.
+     */
+    static InputTokenizer open(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".gz")) {
+            return new InputTokenizer(inflating(file), name);
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        long size = channel.size();
+        Source mapped = new Source() {
+            private long position;
+
+            @Override
+            public ByteBuffer next() throws IOException {
+                if (position >= size) {
+                    return null;
+                }
+                long length = Math.min(WINDOW, size - position);
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                position += length;
+                return window;
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+        return new InputTokenizer(mapped, name);
+    }
+
+    // Chunks are inflated into a fixed set of buffers that the tokenizer hands back once it is done with them
+    private static Source inflating(Path file) throws IOException {
+        InputStream in = new GZIPInputStream(Files.newInputStream(file), 1 << 16);
+        BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(INFLATED_CHUNKS);
+        BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(INFLATED_CHUNKS + 1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < INFLATED_CHUNKS; i++) {
+            free.add(ByteBuffer.allocate(INFLATED_CHUNK));
+        }
+
+        Thread inflater = new Thread(() -> {
+            try {
+                int read = 0;
+                while (read >= 0) {
+                    ByteBuffer chunk = free.take();
+                    byte[] bytes = chunk.array();
+                    int length = 0;
+                    while (length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) >= 0) {
+                        length += read;
+                    }
+                    chunk.clear();
+                    chunk.limit(length);
+                    filled.put(chunk);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+            // Every chunk may be queued already, but there is always room for the end marker
+            filled.add(END_OF_STREAM);
+        }, "gzip-inflater");
+        inflater.setDaemon(true);
+        inflater.start();
+
+        return new Source() {
+            private ByteBuffer current;
+
+            @Override
+            public ByteBuffer next() throws IOException {
+                if (current != null) {
+                    free.add(current);
+                    current = null;
+                }
+                ByteBuffer chunk;
+                try {
+                    chunk = filled.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while inflating " + file);
+                }
+                if (chunk == END_OF_STREAM) {
+                    filled.add(END_OF_STREAM);
+                    Throwable t = failure.get();
+                    if (t instanceof IOException) throw (IOException) t;
+                    if (t != null) throw new IOException(t);
+                    return null;
+                }
+                current = chunk;
+                return chunk;
+            }
+
+            @Override
+            public void close() throws IOException {
+                inflater.interrupt();
+                in.close();
+            }
+        };
+    }
+
+    /** Tokenizer over a stream such as a socket, read into one reusable buffer as data arrives. */
+    static InputTokenizer of(ReadableByteChannel channel, String name) {
+        ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+        Source stream = new Source() {
+            @Override
+            public ByteBuffer next() throws IOException {
+                chunk.clear();
+                int read;
+                do {
+                    read = channel.read(chunk);
+                } while (read == 0);
+                if (read < 0) {
+                    return null;
+                }
+                chunk.flip();
+                return chunk;
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+        return new InputTokenizer(stream, name);
+    }
+
+    // Next byte without consuming it, or -1 at the end of the input
+    private int peek() throws IOException {
+        while (!buffer.hasRemaining()) {
+            if (exhausted) {
+                return -1;
+            }
+            ByteBuffer next = source.next();
+            if (next == null) {
+                exhausted = true;
+                return -1;
+            }
+            buffer = next;
+        }
+        return buffer.get(buffer.position()) & 0xff;
+    }
+
+    private void advance() {
+        if (buffer.get() == '\n') {
+            line++;
+            column = 1;
+        } else {
+            column++;
+        }
+    }
+
+    private static boolean isSeparator(int b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private void skipSeparators() throws IOException {
+        for (int b = peek(); isSeparator(b); b = peek()) {
+            advance();
+        }
+    }
+
+    /** True when only separators are left in the input. */
+    boolean atEnd() throws IOException {
+        skipSeparators();
+        return peek() == -1;
+    }
+
+    /** True when the current line has another token. */
+    boolean hasNextOnLine() throws IOException {
+        skipSeparators();
+        int b = peek();
+        return b != -1 && b != '\n';
+    }
+
+    /** Skips whatever is left of the current line, including its line break. */
+    void skipLine() throws IOException {
+        for (int b = peek(); b != -1; b = peek()) {
+            advance();
+            if (b == '\n') {
+                return;
+            }
+        }
+    }
+
+    /** Reads an int on the current line, skipping leading spaces and tabs. */
+    int nextInt() throws IOException {
+        skipSeparators();
+        tokenLine = line;
+        tokenColumn = column;
+
+        int b = peek();
+        boolean negative = b == '-';
+        if (b == '-' || b == '+') {
+            advance();
+            b = peek();
+        }
+        if (b < '0' || b > '9') {
+            throw error("Invalid input: expected an integer" + found(negative ? "-" : ""));
+        }
+
+        long value = 0;
+        while (b >= '0' && b <= '9') {
+            value = value * 10 + (b - '0');
+            advance();
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw error("Invalid input: integer out of range" + found((negative ? "-" : "") + value));
+            }
+            b = peek();
+        }
+        if (b != -1 && b != '\n' && b != ',' && !isSeparator(b)) {
+            throw error("Invalid input: expected an integer" + found((negative ? "-" : "") + value));
+        }
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw error("Invalid input: integer out of range" + found(Long.toString(value)));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads the next ints of the current line into values, up to its length, and returns how many it
+     * read; 0 once the line has no more. columns[i] gets the column of the i-th one for error(column,
+     * message). Plain tokens are parsed in bulk from a copy of the buffer; anything else (a sign-only or
+     * malformed token, one out of range or split across buffers) ends the batch early and is left to
+     * nextInt on the next call, so the ints come back, and errors are thrown, in the same order as
+     * with nextInt.
+     */
+    int nextInts(int[] values, int[] columns) throws IOException {
+        int count = 0;
+        while (count < values.length && hasNextOnLine()) {
+            int start = buffer.position();
+            scan.fill(buffer, start, Math.min(buffer.remaining(), SCRATCH));
+            scan.count = count;
+            scan(scan, values, columns, column);
+            buffer.position(start + scan.at);
+            column += scan.at;
+
+            if (scan.count > count) {
+                count = scan.count;
+            } else if (count > 0) {
+                break;
+            } else {
+                values[count] = nextInt();
+                columns[count++] = tokenColumn;
+            }
+        }
+        return count;
+    }
+
+    /** Part of a buffer copied to the heap, which is much faster to index than a mapped buffer. */
+    private static final class Scan {
+        final byte[] bytes = new byte[SCRATCH];
+        int length;
+        // Offset of the first byte not consumed, and the ints in the values so far
+        int at;
+        int count;
+
+        void fill(ByteBuffer buffer, int from, int length) {
+            buffer.get(from, bytes, 0, length);
+            this.length = length;
+            at = 0;
+            count = 0;
+        }
+    }
+
+    // Parses plain ints on from scan.at into values, and base plus their offsets into offsets, until
+    // the values are full, the line ends, or a token is not plain or not ended within the bytes
+    private static void scan(Scan scan, int[] values, int[] offsets, int base) {
+        byte[] bytes = scan.bytes;
+        int length = scan.length;
+        int at = scan.at;
+        int count = scan.count;
+        while (count < values.length) {
+            while (at < length && isSeparator(bytes[at])) {
+                at++;
+            }
+            if (at == length || bytes[at] == '\n') {
+                break;
+            }
+
+            int token = at;
+            int minus = (bytes[at] == '-') ? 1 : 0;
+            int digit = (at + minus + 1 < length) ? bytes[at + minus] - '0' : -1;
+            if (digit >= 0 && digit <= 9 && bytes[at + minus + 1] == ' ') {
+                // Paces are mostly single digits followed by a space
+                values[count] = (minus == 0) ? digit : -digit;
+                at += minus + 1;
+            } else {
+                boolean negative = bytes[at] == '-';
+                if (negative) {
+                    at++;
+                }
+                int end = Math.min(length, at + MAX_PLAIN_DIGITS + 1);
+                long value = 0;
+                while (at < end && (digit = bytes[at] - '0') >= 0 && digit <= 9) {
+                    value = value * 10 + digit;
+                    at++;
+                }
+                int digits = at - token - (negative ? 1 : 0);
+                value = negative ? -value : value;
+                if (digits == 0 || digits > MAX_PLAIN_DIGITS || at == length || !endsToken(bytes[at])
+                        || value <= Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                    at = token;
+                    break;
+                }
+                values[count] = (int) value;
+            }
+            offsets[count++] = base + token;
+        }
+        scan.at = at;
+        scan.count = count;
+    }
+
+    /**
+     * Folds the rest of the current line into the reducer on the pool, one stretch of the current
+     * buffer at a time: each stretch is cut at token boundaries into one chunk per thread, and the
+     * reducers of the chunks are merged in order. Stretches shorter than minChunk bytes are left
+     * alone. It stops, without consuming it, at the first token that is not a plain int, that a
+     * reducer refuses or that runs past the buffer, so nextInts carries on from there exactly as if
+     * the line had not been split.
+     */
+    <R extends LineReducer<R>> void reduceLine(R into, ForkJoinPool pool, int minChunk) throws IOException {
+        int parts = pool.getParallelism();
+        while (hasNextOnLine()) {
+            int start = buffer.position();
+            if (buffer == unsplitBuffer && start < unsplitEnd) {
+                return;
+            }
+            int end = lineBreak(start, (int) Math.min(buffer.limit(), start + (long) parts * minChunk));
+            if (end - start < minChunk) {
+                unsplitBuffer = buffer;
+                unsplitEnd = end;
+                return;
+            }
+
+            List<LineChunk<R>> chunks = new ArrayList<>(parts);
+            int size = (end - start) / parts;
+            for (int i = 0, from = start; i < parts && from < end; i++) {
+                int to = (i == parts - 1) ? end : tokenEnd(from + size, end);
+                chunks.add(new LineChunk<>(buffer, from, to, into.empty()));
+                from = to;
+            }
+
+            int stop = start;
+            try {
+                List<Future<Integer>> stops = pool.invokeAll(chunks);
+                for (int i = 0; i < chunks.size(); i++) {
+                    into.merge(chunks.get(i).reducer);
+                    stop = stops.get(i).get();
+                    if (stop < chunks.get(i).to) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reducing a line");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IOException(cause);
+            }
+
+            // Chunks never consume a line break, so the line stays the same
+            buffer.position(stop);
+            column += stop - start;
+            if (stop < end) {
+                return;
+            }
+        }
+    }
+
+    // Offset of the first line break in [from, to) of the buffer, or to; eight bytes at a time
+    private int lineBreak(int from, int to) {
+        int at = from;
+        for (; at + Long.BYTES <= to; at += Long.BYTES) {
+            long word = buffer.getLong(at) ^ NEWLINES;
+            if (((word - 0x0101010101010101L) & ~word & 0x8080808080808080L) != 0) {
+                break;
+            }
+        }
+        while (at < to && buffer.get(at) != '\n') {
+            at++;
+        }
+        return at;
+    }
+
+    // Offset of the first byte at or after from that ends a token, or to
+    private int tokenEnd(int from, int to) {
+        int at = Math.min(from, to);
+        while (at < to && !endsToken(buffer.get(at))) {
+            at++;
+        }
+        return at;
+    }
+
+    /**
+     * One chunk of a split line, the tokens in [from, to) of the buffer; the byte at to ends the last
+     * one unless to is the limit. Returns the offset where it stopped, which is to unless it came to
+     * a token it cannot parse or its reducer refuses.
+     */
+    private static final class LineChunk<R extends LineReducer<R>> implements Callable<Integer> {
+        final ByteBuffer buffer;
+        final int from;
+        final int to;
+        final R reducer;
+
+        LineChunk(ByteBuffer buffer, int from, int to, R reducer) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public Integer call() {
+            Scan scan = new Scan();
+            int[] values = new int[SCRATCH_INTS];
+            int[] offsets = new int[SCRATCH_INTS];
+            int end = Math.min(buffer.limit(), to + 1);
+            int at = from;
+            while (at < to) {
+                // Only absolute reads, so the chunks can share the buffer
+                scan.fill(buffer, at, Math.min(SCRATCH, end - at));
+                scan(scan, values, offsets, 0);
+                int taken = reducer.add(values, scan.count);
+                if (taken < scan.count) {
+                    return at + offsets[taken];
+                }
+                if (scan.at == 0) {
+                    break;
+                }
+                at += scan.at;
+            }
+            return Math.min(at, to);
+        }
+    }
+
+    private static boolean endsToken(int b) {
+        return b == '\n' || b == ',' || isSeparator(b);
+    }
+
+    /** Consumes the given word (ASCII letters, compared ignoring case) on the current line. */
+    void expectWord(String word) throws IOException {
+        skipSeparators();
+        tokenLine = line;
+        tokenColumn = column;
+        for (int i = 0; i < word.length(); i++) {
+            int b = peek();
+            if (b == -1 || Character.toLowerCase(b) != Character.toLowerCase(word.charAt(i))) {
+                throw error("Invalid input: expected '" + word + "'" + found(word.substring(0, i)));
+            }
+            advance();
+        }
+    }
+
+    /** Consumes a comma, allowing spaces around it. */
+    void expectComma() throws IOException {
+        skipSeparators();
+        tokenLine = line;
+        tokenColumn = column;
+        if (peek() != ',') {
+            throw error("Invalid input: expected ','" + found(""));
+        }
+        advance();
+    }
+
+    /** An IOException for the token last read, with its position appended to the message. */
+    IOException error(String message) {
+        return new IOException(message + " at " + name + ":" + tokenLine + ":" + tokenColumn);
+    }
+
+    /** An IOException for the token of the current line at the column nextInts gave for it. */
+    IOException error(int column, String message) {
+        return new IOException(message + " at " + name + ":" + line + ":" + column);
+    }
+
+    // Quotes the token being read: the part already consumed plus the rest of it, which is skipped
+    private String found(String consumed) throws IOException {
+        StringBuilder token = new StringBuilder(consumed);
+        for (int b = peek(); b != -1 && b != '\n' && b != ',' && !isSeparator(b) && token.length() < 32; b = peek()) {
+            token.append((char) b);
+            advance();
+        }
+        if (token.length() > 0) {
+            return ", found '" + token + "'";
+        }
+        // Nothing of a token, only the byte that ends one: name it unless the line is over
+        int b = peek();
+        return (b == -1 || b == '\n') ? ", found end of line" : ", found '" + (char) b + "'";
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Crash-safe progress of one output, kept with --journal in <output>.journal. Each solved case is
+ * appended as a record (a "#<index>" line followed by its result) in input order, and every 256
+ * cases or every second the journal is fsynced and a "#sync" line is written. A rerun after a
+ * crash keeps the records up to the last #sync line, skips those cases and appends the rest; when
+ * the run completes, the records are compacted into the output and the journal is deleted.
+ *
+ * The first line identifies the input (path, size, modification time), so a journal left behind
+ * for a different input is discarded rather than resumed.
+ */
+final class Journal implements Closeable {
+
+    private static final int SYNC_CASES = 256;
+    private static final long SYNC_NANOS = 1_000_000_000L;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final OutputEncoder records;
+    // Cases recorded by earlier runs; read by the reader thread while the writer appends, so never changed
+    private final BitSet done;
+    private final int resumed;
+    private int unsynced;
+    private long lastSync = System.nanoTime();
+
+    private Journal(Path file, FileChannel channel, BitSet done) {
+        this.file = file;
+        this.channel = channel;
+        this.records = OutputEncoder.of(channel);
+        this.done = done;
+        this.resumed = done.cardinality();
+    }
+
+    /** Opens the journal of the output for the input, resuming the records it already holds. */
+    static Journal open(Path input, Path output) throws IOException {
+        Path file = output.resolveSibling(output.getFileName() + ".journal");
+        String identity = "#journal " + input.toAbsolutePath() + " " + Files.size(input) + " "
+                + Files.getLastModifiedTime(input).toMillis();
+
+        BitSet done = new BitSet();
+        long validLength = 0;
+        if (Files.exists(file)) {
+            validLength = load(file, identity, done);
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+        Journal journal = new Journal(file, channel, done);
+        if (validLength == 0) {
+            journal.records.write(identity);
+            journal.records.newLine();
+        } else {
+            System.out.println("Resuming " + output + ": " + journal.resumed + " cases already solved");
+        }
+        return journal;
+    }
+
+    // Collects the cases recorded before the last #sync line and returns the length up to it
+    private static long load(Path file, String identity, BitSet done) throws IOException {
+        ByteBuffer content = map(file);
+        int lineEnd = Shards.nextLine(content, 0);
+        if (!Shards.line(content, 0, lineEnd).equals(identity)) {
+            System.out.println("Warning: " + file + " belongs to a different input; starting over");
+            return 0;
+        }
+
+        long validLength = lineEnd;
+        List<Integer> pending = new ArrayList<>();
+        for (int at = lineEnd; at < content.limit(); ) {
+            int end = Shards.nextLine(content, at);
+            if (content.get(end - 1) != '\n') {
+                // A line cut short by the crash
+                break;
+            }
+            if (content.get(at) == '#') {
+                String header = Shards.line(content, at, end);
+                if (header.equals("#sync")) {
+                    for (int index : pending) {
+                        done.set(index);
+                    }
+                    pending.clear();
+                    validLength = end;
+                } else {
+                    pending.add(Integer.parseInt(header.substring(1)));
+                }
+            }
+            at = end;
+        }
+        return validLength;
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /** True when the case was solved by an earlier run. */
+    boolean contains(int index) {
+        return done.get(index);
+    }
+
+    /** Appends the result of a case; syncs once enough cases or time have gone by. */
+    <R> void append(int index, R result, ParallelCases.ResultWriter<R> writer) throws IOException {
+        records.write('#');
+        records.write(index);
+        records.newLine();
+        writer.write(records, index, result);
+        if (++unsynced >= SYNC_CASES || System.nanoTime() - lastSync >= SYNC_NANOS) {
+            sync();
+        }
+    }
+
+    /** Makes every appended record durable, then marks them as such. */
+    void sync() throws IOException {
+        records.flush();
+        channel.force(false);
+        records.write("#sync");
+        records.newLine();
+        records.flush();
+        unsynced = 0;
+        lastSync = System.nanoTime();
+    }
+
+    /** Copies every record, in input order, to the output through the shard's record headers. */
+    int compact(OutputEncoder out, Shards shards) throws IOException {
+        sync();
+        ByteBuffer content = map(file);
+        int cases = 0;
+        int at = Shards.nextLine(content, 0);
+        while (at < content.limit()) {
+            int headerEnd = Shards.nextLine(content, at);
+            String header = Shards.line(content, at, headerEnd);
+            int end = headerEnd;
+            while (end < content.limit() && content.get(end) != '#') {
+                end = Shards.nextLine(content, end);
+            }
+            if (!header.equals("#sync")) {
+                shards.startCase(out, Integer.parseInt(header.substring(1)));
+                out.write(content.duplicate().position(headerEnd).limit(end));
+                cases++;
+            }
+            at = end;
+        }
+        return cases;
+    }
+
+    /** Removes the journal once its records have reached the output. */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            records.flush();
+            channel.close();
+        }
+    }
+}
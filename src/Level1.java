@@ -4,17 +4,23 @@ import java.util.*;
 
 public class Level1 {
 
+    private static int threads = 1;
+    private static Shards shards = Shards.ALL;
+    private static LineSplitter splitter = LineSplitter.OFF;
+
+    // Paces parsed and summed per batch
+    private static final int BATCH = 4096;
+
     public static void main(String[] args) {
         try {
+            configure(args);
+
             // Determine which input file to process
             String inputFile = determineInputFile(args);
             String outputFile = inputFile.replace(".in", ".out");
 
-            // Process the file
-            List<String> results = processFile(inputFile);
-
-            // Write results
-            writeResults(outputFile, results);
+            // Process the file, writing results as they are ready
+            processFile(inputFile, outputFile);
 
             System.out.println("Processing complete!");
             System.out.println("Input: " + inputFile);
@@ -26,12 +32,29 @@ public class Level1 {
         }
     }
 
+    /**
+     * Reads the options this level understands; called once before any file is processed.
+     * --split-lines MB splits long sequence lines across the threads.
+     */
+    static void configure(String[] args) {
+        threads = ParallelCases.threads(args);
+        shards = Shards.fromArgs(args);
+        splitter = LineSplitter.fromArgs(args, threads);
+    }
+
     /**
      * Determines which input file to process based on command line args or default
      */
     private static String determineInputFile(String[] args) {
-        if (args.length > 0) {
-            return args[0];
+        // First argument that is not an option or an option's value
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                if (!Options.FLAGS.contains(args[i])) {
+                    i++;
+                }
+            } else {
+                return args[i];
+            }
         }
 
         // Default: look for input files in current directory or uploads
@@ -54,75 +77,116 @@ public class Level1 {
     }
 
     /**
-     * Processes the input file and calculates results
+     * Processes the input file and calculates results, returning the number of sequences
      */
-    private static List<String> processFile(String inputFile) throws IOException {
-        List<String> results = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {
-            // Read number of sequences
-            String firstLine = reader.readLine();
-            if (firstLine == null || firstLine.trim().isEmpty()) {
-                throw new IOException("Invalid input: empty file");
-            }
+    static int processFile(String inputFile, String outputFile) throws IOException {
+        int sequences;
+        try (InputTokenizer tokens = InputTokenizer.open(Paths.get(inputFile));
+             ParallelCases.SolverPool pool = new ParallelCases.SolverPool(threads)) {
+            sequences = shards.toFile(Paths.get(inputFile), Paths.get(outputFile),
+                    (out, journal) -> process(tokens, pool, shards, journal, out));
+        }
 
-            int n = Integer.parseInt(firstLine.trim());
+        System.out.println("Results written to: " + outputFile);
+        return sequences;
+    }
 
-            // Process each sequence
-            for (int i = 0; i < n; i++) {
-                String line = reader.readLine();
+    /**
+     * Solves the sequences read from tokens on the pool, writing results to out in input order
+     */
+    static int process(InputTokenizer tokens, ParallelCases.SolverPool pool, Shards shards, Journal journal,
+                       OutputEncoder out) throws IOException {
+        // Read number of sequences
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: empty file");
+        }
 
-                if (line == null) {
-                    throw new IOException("Invalid input: expected " + n + " sequences, found only " + i);
-                }
+        int n = tokens.nextInt();
+        tokens.skipLine();
 
-                long totalTime = calculateSequenceTime(line.trim());
-                results.add(String.valueOf(totalTime));
-            }
+        // Process each sequence; summing is all the work there is, so it happens while reading
+        int[] paces = new int[BATCH];
+        int[] columns = new int[BATCH];
+        return ParallelCases.pipeline(index -> readSequence(tokens, n, index, paces, columns), pool, total -> total,
+                shards, journal, out, Level1::writeResult);
+    }
+
+    private static Long readSequence(InputTokenizer tokens, int n, int index, int[] paces, int[] columns)
+            throws IOException {
+        if (index == n) {
+            return null;
         }
 
-        return results;
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: expected " + n + " sequences, found only " + index);
+        }
+        return calculateSequenceTime(tokens, paces, columns);
     }
 
     /**
-     * Calculates the total time for a sequence by summing all pace values
+     * Calculates the total time for a sequence by summing all pace values on the current line, split
+     * across threads where the splitter finds it worth it
      */
-    private static long calculateSequenceTime(String sequence) {
-        if (sequence.isEmpty()) {
-            return 0;
-        }
-
-        String[] paces = sequence.split("\\s+");
-        long totalTime = 0;
-
-        for (String paceStr : paces) {
-            if (!paceStr.isEmpty()) {
-                try {
-                    int pace = Integer.parseInt(paceStr);
-                    if (pace <= 0) {
-                        throw new IllegalArgumentException("Invalid pace value: " + pace + " (must be > 0)");
-                    }
-                    totalTime += pace;
-                } catch (NumberFormatException e) {
-                    throw new IllegalArgumentException("Invalid pace format: " + paceStr);
-                }
+    private static long calculateSequenceTime(InputTokenizer tokens, int[] paces, int[] columns)
+            throws IOException {
+        Total total = new Total();
+
+        int count;
+        do {
+            splitter.reduce(tokens, total);
+            count = tokens.nextInts(paces, columns);
+            int taken = total.add(paces, count);
+            if (taken < count) {
+                throw tokens.error(columns[taken], "Invalid pace value: " + paces[taken] + " (must be > 0)");
             }
-        }
+        } while (count > 0);
+        tokens.skipLine();
 
-        return totalTime;
+        return total.time;
     }
 
     /**
-     * Writes results to output file
+     * Time of a sequence or of one chunk of it. Each batch is summed without branches, so the JIT can
+     * vectorize the loop; an invalid pace shows up in the batch minimum and is then looked for.
      */
-    private static void writeResults(String outputFile, List<String> results) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            for (String result : results) {
-                writer.write(result);
-                writer.newLine();
+    private static final class Total implements InputTokenizer.LineReducer<Total> {
+        long time;
+
+        @Override
+        public int add(int[] paces, int count) {
+            long sum = 0;
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                sum += paces[i];
+                min = Math.min(min, paces[i]);
+            }
+            if (min > 0) {
+                time += sum;
+                return count;
             }
+            int i = 0;
+            while (paces[i] > 0) {
+                time += paces[i++];
+            }
+            return i;
         }
 
-        System.out.println("Results written to: " + outputFile);
+        @Override
+        public Total empty() {
+            return new Total();
+        }
+
+        @Override
+        public void merge(Total next) {
+            time += next.time;
+        }
+    }
+
+    /**
+     * Writes one result line to the output file
+     */
+    private static void writeResult(OutputEncoder writer, int index, Long total) throws IOException {
+        writer.write(total.longValue());
+        writer.newLine();
     }
 }
\ No newline at end of file
@@ -4,8 +4,17 @@ import java.util.*;
 
 public class Level2 {
 
+    private static int threads = 1;
+    private static Shards shards = Shards.ALL;
+    private static LineSplitter splitter = LineSplitter.OFF;
+
+    // Paces parsed and reduced per batch
+    private static final int BATCH = 4096;
+
     public static void main(String[] args) {
         try {
+            configure(args);
+
             String[] inputFiles = {
                     "level2_1_small.in",
                     "level2_2_large.in"
@@ -14,6 +23,8 @@ public class Level2 {
             for (String inputFile : inputFiles) {
                 if (Files.exists(Paths.get(inputFile))) {
                     processInputFile(inputFile);
+                } else if (Files.exists(Paths.get(inputFile + ".gz"))) {
+                    processInputFile(inputFile + ".gz");
                 }
             }
 
@@ -26,6 +37,16 @@ public class Level2 {
         }
     }
 
+    /**
+     * Reads the options this level understands; called once before any file is processed.
+     * --split-lines MB splits long sequence lines across the threads.
+     */
+    static void configure(String[] args) {
+        threads = ParallelCases.threads(args);
+        shards = Shards.fromArgs(args);
+        splitter = LineSplitter.fromArgs(args, threads);
+    }
+
     private static void processInputFile(String inputFile) throws IOException {
         String fileName = Paths.get(inputFile).getFileName().toString();
         String outputFileName = fileName.replace(".in", ".out");
@@ -36,88 +57,97 @@ public class Level2 {
         }
 
         String outputFile = outputDir.resolve(outputFileName).toString();
-        List<String> results = processFile(inputFile);
-
-        writeResults(outputFile, results);
+        processFile(inputFile, outputFile);
 
         System.out.println("Output written to: " + outputFile);
     }
 
-    private static List<String> processFile(String inputFile) throws IOException {
-        List<String> results = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {
-            String firstLine = reader.readLine();
-            if (firstLine == null || firstLine.trim().isEmpty()) {
-                throw new IOException("Invalid input: empty file");
-            }
+    /** Solves every case of the input file into the output file and returns the number of cases. */
+    static int processFile(String inputFile, String outputFile) throws IOException {
+        try (InputTokenizer tokens = InputTokenizer.open(Paths.get(inputFile));
+             ParallelCases.SolverPool pool = new ParallelCases.SolverPool(threads)) {
+            return shards.toFile(Paths.get(inputFile), Paths.get(outputFile),
+                    (out, journal) -> process(tokens, pool, shards, journal, out));
+        }
+    }
 
-            int n = Integer.parseInt(firstLine.trim());
+    /** Solves the cases read from tokens on the pool, writing results to out in input order. */
+    static int process(InputTokenizer tokens, ParallelCases.SolverPool pool, Shards shards, Journal journal,
+                       OutputEncoder out) throws IOException {
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: empty file");
+        }
 
-            for (int i = 0; i < n; i++) {
-                String line = reader.readLine();
+        int n = tokens.nextInt();
+        tokens.skipLine();
 
-                if (line == null) {
-                    throw new IOException("Invalid input: expected " + n + " sequences, found only " + i);
-                }
+        // Sequences are reduced while reading; the writer encodes the results
+        int[] paces = new int[BATCH];
+        int[] columns = new int[BATCH];
+        return ParallelCases.pipeline(index -> readSequence(tokens, n, index, paces, columns), pool,
+                result -> result, shards, journal, out, Level2::writeResult);
+    }
 
-                SequenceResult result = calculateSequenceResult(line.trim());
-                results.add(result.position + " " + result.time);
-            }
+    private static SequenceResult readSequence(InputTokenizer tokens, int n, int index, int[] paces,
+                                               int[] columns) throws IOException {
+        if (index == n) {
+            return null;
         }
 
-        return results;
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: expected " + n + " sequences, found only " + index);
+        }
+        return calculateSequenceResult(tokens, paces, columns);
     }
 
-    private static class SequenceResult {
+    // Position and time are plain reductions over each batch: signum and |pace| (zeros take 1 tick),
+    // written without branches so the JIT can vectorize them
+    private static class SequenceResult implements InputTokenizer.LineReducer<SequenceResult> {
         long position;
         long time;
 
-        SequenceResult(long position, long time) {
-            this.position = position;
-            this.time = time;
+        @Override
+        public int add(int[] paces, int count) {
+            for (int i = 0; i < count; i++) {
+                int pace = paces[i];
+                position += Integer.signum(pace);
+                time += Math.max(1, Math.abs((long) pace));
+            }
+            return count;
         }
-    }
 
-    private static SequenceResult calculateSequenceResult(String sequence) {
-        if (sequence.isEmpty()) {
-            return new SequenceResult(0, 0);
+        @Override
+        public SequenceResult empty() {
+            return new SequenceResult();
         }
 
-        String[] paces = sequence.split("\\s+");
-        long position = 0;
-        long totalTime = 0;
-
-        for (String paceStr : paces) {
-            if (!paceStr.isEmpty()) {
-                try {
-                    int pace = Integer.parseInt(paceStr);
-
-                    if (pace > 0) {
-                        position += 1;
-                        totalTime += pace;
-                    } else if (pace < 0) {
-                        position -= 1;
-                        totalTime += Math.abs(pace);
-                    } else {
-                        totalTime += 1;
-                    }
-
-                } catch (NumberFormatException e) {
-                    throw new IllegalArgumentException("Invalid pace format: " + paceStr);
-                }
-            }
+        @Override
+        public void merge(SequenceResult next) {
+            position += next.position;
+            time += next.time;
         }
+    }
+
+    // Split across threads where the splitter finds it worth it
+    private static SequenceResult calculateSequenceResult(InputTokenizer tokens, int[] paces, int[] columns)
+            throws IOException {
+        SequenceResult result = new SequenceResult();
 
-        return new SequenceResult(position, totalTime);
+        int count;
+        do {
+            splitter.reduce(tokens, result);
+            count = tokens.nextInts(paces, columns);
+            result.add(paces, count);
+        } while (count > 0);
+        tokens.skipLine();
+
+        return result;
     }
 
-    private static void writeResults(String outputFile, List<String> results) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            for (String result : results) {
-                writer.write(result);
-                writer.newLine();
-            }
-        }
+    private static void writeResult(OutputEncoder writer, int index, SequenceResult result) throws IOException {
+        writer.write(result.position);
+        writer.write(' ');
+        writer.write(result.time);
+        writer.newLine();
     }
 }
\ No newline at end of file
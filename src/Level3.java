@@ -1,11 +1,18 @@
 import java.io.*;
 import java.nio.file.*;
-import java.util.*;
+import java.util.List;
 
 public class Level3 {
 
+    private static SolutionStore solutions = SolutionStore.disabled();
+    private static int threads = 1;
+    private static Shards shards = Shards.ALL;
+    private static ProfileTable profiles = ProfileTable.DEFAULT;
+
     public static void main(String[] args) {
         try {
+            configure(args);
+
             String[] inputFiles = {
                     "level3_1_small.in",
                     "level3_2_large.in"
@@ -14,14 +21,35 @@ public class Level3 {
             for (String inputFile : inputFiles) {
                 if (Files.exists(Paths.get(inputFile))) {
                     processInputFile(inputFile);
+                } else if (Files.exists(Paths.get(inputFile + ".gz"))) {
+                    processInputFile(inputFile + ".gz");
                 }
             }
+            finish(args);
         } catch (Exception e) {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Reads the options this level understands; called once before any file is processed.
+     * --profile-table N sizes the 1D profile table.
+     */
+    static void configure(String[] args) throws IOException {
+        solutions = SolutionStore.fromArgs(args, "level3", List.of("--profile-table"),
+                Level3.class, PaceProfile.class, ProfileTable.class);
+        threads = ParallelCases.threads(args);
+        shards = Shards.fromArgs(args);
+        profiles = ProfileTable.fromArgs(args);
+    }
+
+    /** Closes the solution cache and reports on it; called once after the last file. */
+    static void finish(String[] args) throws IOException {
+        solutions.close();
+        System.out.println("Solution cache: " + solutions.hits() + " hits, " + solutions.misses() + " misses");
+    }
+
     private static void processInputFile(String inputFile) throws IOException {
         String fileName = Paths.get(inputFile).getFileName().toString();
         String outputFileName = fileName.replace(".in", ".out");
@@ -32,166 +60,82 @@ public class Level3 {
         }
 
         String outputFile = outputDir.resolve(outputFileName).toString();
-        List<String> results = processFile(inputFile);
-
-        writeResults(outputFile, results);
+        processFile(inputFile, outputFile);
 
         System.out.println("Output written to: " + outputFile);
     }
 
-    private static List<String> processFile(String inputFile) throws IOException {
-        List<String> results = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {
-            String firstLine = reader.readLine();
-            if (firstLine == null || firstLine.trim().isEmpty()) {
-                throw new IOException("Invalid input: empty file");
-            }
-
-            int n = Integer.parseInt(firstLine.trim());
-
-            for (int i = 0; i < n; i++) {
-                String line = reader.readLine();
-
-                if (line == null) {
-                    throw new IOException("Invalid input: expected " + n + " cases, found only " + i);
-                }
-
-                String[] parts = line.trim().split("\\s+");
-                int targetPosition = Integer.parseInt(parts[0]);
-                int timeLimit = Integer.parseInt(parts[1]);
-
-                String sequence = generateSequence(targetPosition, timeLimit);
-                results.add(sequence);
-            }
+    /** Solves every case of the input file into the output file and returns the number of cases. */
+    static int processFile(String inputFile, String outputFile) throws IOException {
+        try (InputTokenizer tokens = InputTokenizer.open(Paths.get(inputFile));
+             ParallelCases.SolverPool pool = new ParallelCases.SolverPool(threads)) {
+            return shards.toFile(Paths.get(inputFile), Paths.get(outputFile),
+                    (out, journal) -> process(tokens, pool, shards, journal, out));
         }
-
-        return results;
     }
 
-    private static String generateSequence(int targetPosition, int timeLimit) {
-        List<Integer> sequence = new ArrayList<>();
-        sequence.add(0);
-
-        if (targetPosition == 0) {
-            sequence.add(0);
-            return sequenceToString(sequence);
+    /** Solves the cases read from tokens on the pool, writing results to out in input order. */
+    static int process(InputTokenizer tokens, ParallelCases.SolverPool pool, Shards shards, Journal journal,
+                       OutputEncoder out) throws IOException {
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: empty file");
         }
 
-        int absTarget = Math.abs(targetPosition);
-        boolean forward = targetPosition > 0;
-
-        int maxPace = forward ? 1 : -1;
-        int minPace = forward ? 5 : -5;
-
-        for (int accelTo = Math.abs(minPace); accelTo >= Math.abs(maxPace); accelTo--) {
-            List<Integer> testSeq = new ArrayList<>();
-            testSeq.add(0);
-
-            int position = 0;
-            int currentPace = 0;
-
-            if (forward) {
-                for (int p = 5; p >= accelTo; p--) {
-                    testSeq.add(p);
-                    position += 1;
-                }
-                currentPace = accelTo;
-            } else {
-                for (int p = -5; p <= -accelTo; p++) {
-                    testSeq.add(p);
-                    position -= 1;
-                }
-                currentPace = -accelTo;
-            }
-
-            int remaining = absTarget - Math.abs(position);
-
-            int decelDist = 0;
-            if (forward) {
-                for (int p = accelTo + 1; p <= 5; p++) {
-                    decelDist += 1;
-                }
-            } else {
-                for (int p = -accelTo - 1; p >= -5; p--) {
-                    decelDist += 1;
-                }
-            }
-
-            if (remaining >= decelDist) {
-                int maintainSteps = remaining - decelDist;
-                for (int i = 0; i < maintainSteps; i++) {
-                    testSeq.add(currentPace);
-                    if (forward) position += 1;
-                    else position -= 1;
-                }
-
-                if (forward) {
-                    for (int p = accelTo + 1; p <= 5; p++) {
-                        testSeq.add(p);
-                        position += 1;
-                    }
-                } else {
-                    for (int p = -accelTo - 1; p >= -5; p--) {
-                        testSeq.add(p);
-                        position -= 1;
-                    }
-                }
+        int n = tokens.nextInt();
+        tokens.skipLine();
 
-                testSeq.add(0);
+        return ParallelCases.pipeline(index -> readCase(tokens, n, index), pool, Level3::solveCase, shards,
+                journal, out, Level3::writeResult);
+    }
 
-                if (position == targetPosition) {
-                    int time = calculateTime(testSeq);
-                    if (time <= timeLimit) {
-                        return sequenceToString(testSeq);
-                    }
-                }
-            }
+    private static Case readCase(InputTokenizer tokens, int n, int index) throws IOException {
+        if (index == n) {
+            return null;
         }
 
-        sequence.clear();
-        sequence.add(0);
-        if (forward) {
-            for (int i = 0; i < absTarget; i++) {
-                sequence.add(5);
-            }
-        } else {
-            for (int i = 0; i < absTarget; i++) {
-                sequence.add(-5);
-            }
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: expected " + n + " cases, found only " + index);
         }
-        sequence.add(0);
 
-        return sequenceToString(sequence);
+        int targetPosition = tokens.nextInt();
+        int timeLimit = tokens.nextInt();
+        tokens.skipLine();
+        return new Case(targetPosition, timeLimit);
     }
 
-    private static int calculateTime(List<Integer> sequence) {
-        int time = 0;
-        for (int pace : sequence) {
-            if (pace == 0) {
-                time += 1;
-            } else {
-                time += Math.abs(pace);
-            }
+    private static class Case {
+        final int targetPosition;
+        final int timeLimit;
+
+        Case(int targetPosition, int timeLimit) {
+            this.targetPosition = targetPosition;
+            this.timeLimit = timeLimit;
         }
-        return time;
     }
 
-    private static String sequenceToString(List<Integer> sequence) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < sequence.size(); i++) {
-            if (i > 0) sb.append(" ");
-            sb.append(sequence.get(i));
+    private static String solveCase(Case c) throws IOException {
+        // Cases solved by an earlier run come from the solution cache
+        String key = c.targetPosition + " " + c.timeLimit;
+        String sequence = solutions.get(key);
+        if (sequence == null) {
+            sequence = generateSequence(c.targetPosition, c.timeLimit);
+            solutions.put(key, sequence);
         }
-        return sb.toString();
+        return sequence;
     }
 
-    private static void writeResults(String outputFile, List<String> results) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            for (String result : results) {
-                writer.write(result);
-                writer.newLine();
-            }
+    // Slowest accelerate-cruise-decelerate profile that still makes the time limit; the fastest
+    // profile there is when none does
+    private static String generateSequence(int targetPosition, int timeLimit) {
+        int cruise = PaceProfile.slowestCruise(Math.abs((long) targetPosition), timeLimit);
+        if (cruise == PaceProfile.NONE) {
+            return profiles.toString(targetPosition);
         }
+        return PaceProfile.toString(targetPosition, cruise);
+    }
+
+    private static void writeResult(OutputEncoder writer, int index, String result) throws IOException {
+        writer.write(result);
+        writer.newLine();
     }
 }
\ No newline at end of file
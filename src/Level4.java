@@ -1,11 +1,18 @@
 import java.io.*;
 import java.nio.file.*;
-import java.util.*;
+import java.util.List;
 
 public class Level4 {
 
+    private static SolutionStore solutions = SolutionStore.disabled();
+    private static int threads = 1;
+    private static Shards shards = Shards.ALL;
+    private static ProfileTable profiles = ProfileTable.DEFAULT;
+
     public static void main(String[] args) {
         try {
+            configure(args);
+
             String[] inputFiles = {
                     "level4_1_small.in",
                     "level4_2_large.in"
@@ -16,10 +23,14 @@ public class Level4 {
                 if (Files.exists(Paths.get(inputFile))) {
                     processInputFile(inputFile);
                     filesProcessed++;
+                } else if (Files.exists(Paths.get(inputFile + ".gz"))) {
+                    processInputFile(inputFile + ".gz");
+                    filesProcessed++;
                 } else {
                     System.out.println("Warning: Input file not found: " + inputFile);
                 }
             }
+            finish(args);
 
             if (filesProcessed == 0) {
                 System.out.println("\n=== No Level 4 files found to process! ===");
@@ -33,6 +44,24 @@ public class Level4 {
         }
     }
 
+    /**
+     * Reads the options this level understands; called once before any file is processed.
+     * --profile-table N sizes the 1D profile table.
+     */
+    static void configure(String[] args) throws IOException {
+        solutions = SolutionStore.fromArgs(args, "level4", List.of("--profile-table"),
+                Level4.class, ProfileTable.class);
+        threads = ParallelCases.threads(args);
+        shards = Shards.fromArgs(args);
+        profiles = ProfileTable.fromArgs(args);
+    }
+
+    /** Closes the solution cache and reports on it; called once after the last file. */
+    static void finish(String[] args) throws IOException {
+        solutions.close();
+        System.out.println("Solution cache: " + solutions.hits() + " hits, " + solutions.misses() + " misses");
+    }
+
     private static void processInputFile(String inputFile) throws IOException {
         String fileName = Paths.get(inputFile).getFileName().toString();
         String outputFileName = fileName.replace(".in", ".out");
@@ -43,348 +72,99 @@ public class Level4 {
         }
 
         String outputFile = outputDir.resolve(outputFileName).toString();
-        List<String> results = processFile(inputFile);
-
-        writeResults(outputFile, results);
+        processFile(inputFile, outputFile);
 
         System.out.println("Output written to: " + outputFile);
     }
 
-    private static List<String> processFile(String inputFile) throws IOException {
-        List<String> results = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {
-            String firstLine = reader.readLine();
-            if (firstLine == null || firstLine.trim().isEmpty()) {
-                throw new IOException("Invalid input: empty file");
-            }
-
-            int n = Integer.parseInt(firstLine.trim());
-
-            for (int i = 0; i < n; i++) {
-                String line = reader.readLine();
-
-                if (line == null) {
-                    throw new IOException("Invalid input: expected " + n + " cases, found only " + i);
-                }
-
-                // Parse: "X,Y timeLimit"
-                String[] parts = line.trim().split("\\s+");
-                String[] coords = parts[0].split(",");
-                int targetX = Integer.parseInt(coords[0]);
-                int targetY = Integer.parseInt(coords[1]);
-                int timeLimit = Integer.parseInt(parts[1]);
-
-                TwoDSequence sequences = generateOptimalSequences(targetX, targetY, timeLimit);
-
-                results.add(sequences.xSequence);
-                results.add(sequences.ySequence);
-
-                if (i < n - 1) {
-                    results.add("");
-                }
-            }
-        }
-
-        return results;
-    }
-
-    private static class TwoDSequence {
-        String xSequence;
-        String ySequence;
-        int maxTime;
-
-        TwoDSequence(String xSequence, String ySequence, int maxTime) {
-            this.xSequence = xSequence;
-            this.ySequence = ySequence;
-            this.maxTime = maxTime;
-        }
-    }
-
-    private static TwoDSequence generateOptimalSequences(int targetX, int targetY, int timeLimit) {
-        String xSeq = generateOptimalSequence1D(targetX, timeLimit);
-        String ySeq = generateOptimalSequence1D(targetY, timeLimit);
-        int xTime = calculateSequenceTime(xSeq);
-        int yTime = calculateSequenceTime(ySeq);
-
-        return new TwoDSequence(xSeq, ySeq, Math.max(xTime, yTime));
-    }
-
-    private static String generateOptimalSequence1D(int target, int timeLimit) {
-        if (target == 0) {
-            return "0 0";
-        }
-
-        int absTarget = Math.abs(target);
-        boolean forward = target > 0;
-
-        for (int maxPace = 1; maxPace <= 5; maxPace++) {
-            List<Integer> sequence = buildSequence(absTarget, forward, maxPace);
-            int time = calculateSequenceTime(sequenceToString(sequence));
-
-            if (time <= timeLimit) {
-                return sequenceToString(sequence);
-            }
-        }
-
-        List<Integer> fallback = new ArrayList<>();
-        fallback.add(0);
-        int pace = forward ? 5 : -5;
-
-        for (int i = 0; i < absTarget; i++) {
-            fallback.add(pace);
-        }
-        fallback.add(0);
-
-        return sequenceToString(fallback);
-    }
-
-    private static List<Integer> buildSequence(int absTarget, boolean forward, int maxPace) {
-        List<Integer> sequence = new ArrayList<>();
-        sequence.add(0);
-
-        if (absTarget == 0) {
-            sequence.add(0);
-            return sequence;
-        }
-
-        int accelSteps = 5 - maxPace;
-        int decelSteps = accelSteps;
-        int accelDistance = accelSteps;
-        int decelDistance = decelSteps;
-
-        if (accelDistance + decelDistance > absTarget) {
-            return buildSimpleSequence(absTarget, forward);
-        }
-
-        int position = 0;
-
-        if (forward) {
-            for (int pace = 5; pace > maxPace; pace--) {
-                sequence.add(pace);
-                position++;
-            }
-        } else {
-            for (int pace = -5; pace < -maxPace; pace++) {
-                sequence.add(pace);
-                position++;
-            }
-        }
-
-        int remaining = absTarget - position;
-        int cruiseSteps = remaining - decelDistance;
-
-        if (cruiseSteps > 0) {
-            int cruisePace = forward ? maxPace : -maxPace;
-            for (int i = 0; i < cruiseSteps; i++) {
-                sequence.add(cruisePace);
-                position++;
-            }
-        }
-
-        if (forward) {
-            for (int pace = maxPace + 1; pace <= 5; pace++) {
-                if (position < absTarget) {
-                    sequence.add(pace);
-                    position++;
-                }
-            }
-        } else {
-            for (int pace = -maxPace - 1; pace >= -5; pace--) {
-                if (position < absTarget) {
-                    sequence.add(pace);
-                    position++;
-                }
-            }
+    /** Solves every case of the input file into the output file and returns the number of cases. */
+    static int processFile(String inputFile, String outputFile) throws IOException {
+        try (InputTokenizer tokens = InputTokenizer.open(Paths.get(inputFile));
+             ParallelCases.SolverPool pool = new ParallelCases.SolverPool(threads)) {
+            return shards.toFile(Paths.get(inputFile), Paths.get(outputFile),
+                    (out, journal) -> process(tokens, pool, shards, journal, out));
         }
-
-        sequence.add(0);
-        return sequence;
     }
 
-    private static List<Integer> buildSimpleSequence(int absTarget, boolean forward) {
-        List<Integer> sequence = new ArrayList<>();
-        sequence.add(0);
-
-        if (absTarget == 0) {
-            sequence.add(0);
-            return sequence;
-        }
-
-        List<Integer> bestSequence = null;
-        int bestTime = Integer.MAX_VALUE;
-
-        for (int maxSpeed = 1; maxSpeed <= 5; maxSpeed++) {
-            List<Integer> candidate = buildWithMaxSpeed(absTarget, forward, maxSpeed);
-            int time = calculateSequenceTime(sequenceToString(candidate));
-
-            int pos = calculatePosition(candidate);
-
-            if (Math.abs(pos) == absTarget && time < bestTime) {
-                bestTime = time;
-                bestSequence = candidate;
-            }
-        }
-
-        if (bestSequence != null) {
-            return bestSequence;
+    /** Solves the cases read from tokens on the pool, writing results to out in input order. */
+    static int process(InputTokenizer tokens, ParallelCases.SolverPool pool, Shards shards, Journal journal,
+                       OutputEncoder out) throws IOException {
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: empty file");
         }
 
-        int pace = forward ? 5 : -5;
-        for (int i = 0; i < absTarget; i++) {
-            sequence.add(pace);
-        }
-        sequence.add(0);
+        int n = tokens.nextInt();
+        tokens.skipLine();
 
-        return sequence;
+        return ParallelCases.pipeline(index -> readCase(tokens, n, index), pool, Level4::solveCase, shards,
+                journal, out, Level4::writeResult);
     }
 
-    private static List<Integer> buildWithMaxSpeed(int absTarget, boolean forward, int maxSpeed) {
-        List<Integer> sequence = new ArrayList<>();
-        sequence.add(0);
-
-        int accelSteps = 5 - maxSpeed;
-        int decelSteps = accelSteps;
-        int minDistance = accelSteps + decelSteps;
-
-        if (absTarget < minDistance) {
-            return buildShortPattern(absTarget, forward);
+    private static Case readCase(InputTokenizer tokens, int n, int index) throws IOException {
+        if (index == n) {
+            return null;
         }
 
-        int position = 0;
-
-        if (forward) {
-            for (int pace = 5; pace > maxSpeed; pace--) {
-                sequence.add(pace);
-                position++;
-            }
-        } else {
-            for (int pace = -5; pace < -maxSpeed; pace++) {
-                sequence.add(pace);
-                position++;
-            }
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: expected " + n + " cases, found only " + index);
         }
 
-        int remaining = absTarget - position;
-        int cruiseSteps = remaining - decelSteps;
-
-        if (cruiseSteps > 0) {
-            int pace = forward ? maxSpeed : -maxSpeed;
-            for (int i = 0; i < cruiseSteps; i++) {
-                sequence.add(pace);
-                position++;
-            }
-        }
-
-        if (forward) {
-            for (int pace = maxSpeed + 1; pace <= 5; pace++) {
-                if (position < absTarget) {
-                    sequence.add(pace);
-                    position++;
-                }
-            }
-        } else {
-            for (int pace = -maxSpeed - 1; pace >= -5; pace--) {
-                if (position < absTarget) {
-                    sequence.add(pace);
-                    position++;
-                }
-            }
-        }
-
-        sequence.add(0);
-        return sequence;
+        // Parse: "X,Y timeLimit"
+        int targetX = tokens.nextInt();
+        tokens.expectComma();
+        int targetY = tokens.nextInt();
+        int timeLimit = tokens.nextInt();
+        tokens.skipLine();
+        return new Case(targetX, targetY, timeLimit);
     }
 
-    private static List<Integer> buildShortPattern(int absTarget, boolean forward) {
-        List<Integer> sequence = new ArrayList<>();
-        sequence.add(0);
+    private static class Case {
+        final int targetX;
+        final int targetY;
+        final int timeLimit;
 
-        if (absTarget == 1) {
-            sequence.add(forward ? 5 : -5);
-            sequence.add(0);
-            return sequence;
-        }
-
-        if (absTarget == 2) {
-            if (forward) {
-                sequence.add(5);
-                sequence.add(5);
-            } else {
-                sequence.add(-5);
-                sequence.add(-5);
-            }
-            sequence.add(0);
-            return sequence;
-        }
-
-        int halfDist = absTarget / 2;
-        int accelTo = Math.max(1, 6 - halfDist);
-
-        if (forward) {
-            for (int pace = 5; pace > accelTo && sequence.size() - 1 < absTarget; pace--) {
-                sequence.add(pace);
-            }
-            for (int pace = accelTo + 1; pace <= 5 && sequence.size() - 1 < absTarget; pace++) {
-                sequence.add(pace);
-            }
-        } else {
-            for (int pace = -5; pace < -accelTo && sequence.size() - 1 < absTarget; pace++) {
-                sequence.add(pace);
-            }
-            for (int pace = -accelTo - 1; pace >= -5 && sequence.size() - 1 < absTarget; pace--) {
-                sequence.add(pace);
-            }
+        Case(int targetX, int targetY, int timeLimit) {
+            this.targetX = targetX;
+            this.targetY = targetY;
+            this.timeLimit = timeLimit;
         }
-
-        sequence.add(0);
-
-        return sequence;
     }
 
-    private static int calculatePosition(List<Integer> sequence) {
-        int pos = 0;
-        for (int pace : sequence) {
-            if (pace > 0) pos++;
-            else if (pace < 0) pos--;
+    private static String[] solveCase(Case c) throws IOException {
+        // Cases solved by an earlier run come from the solution cache
+        String key = c.targetX + "," + c.targetY + " " + c.timeLimit;
+        String cached = solutions.get(key);
+        if (cached == null) {
+            TwoDSequence sequences = generateOptimalSequences(c.targetX, c.targetY);
+            cached = sequences.xSequence + "\n" + sequences.ySequence;
+            solutions.put(key, cached);
         }
-
-        return pos;
+        return cached.split("\n");
     }
 
-    private static int calculateSequenceTime(String sequence) {
-        if (sequence.isEmpty()) return 0;
-
-        String[] paces = sequence.trim().split("\\s+");
-        int time = 0;
+    private static class TwoDSequence {
+        String xSequence;
+        String ySequence;
 
-        for (String paceStr : paces) {
-            int pace = Integer.parseInt(paceStr);
-            if (pace == 0) {
-                time += 1;
-            } else {
-                time += Math.abs(pace);
-            }
+        TwoDSequence(String xSequence, String ySequence) {
+            this.xSequence = xSequence;
+            this.ySequence = ySequence;
         }
-
-        return time;
     }
 
-    private static String sequenceToString(List<Integer> sequence) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < sequence.size(); i++) {
-            if (i > 0) sb.append(" ");
-            sb.append(sequence.get(i));
-        }
-        return sb.toString();
+    // Each axis takes its minimum-time profile, which makes the time limit whenever any profile does
+    private static TwoDSequence generateOptimalSequences(int targetX, int targetY) {
+        return new TwoDSequence(profiles.toString(targetX), profiles.toString(targetY));
     }
 
-    private static void writeResults(String outputFile, List<String> results) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            for (String result : results) {
-                writer.write(result);
-                writer.newLine();
-            }
+    // Cases are separated by a blank line
+    private static void writeResult(OutputEncoder writer, int index, String[] sequences) throws IOException {
+        if (index > 0) {
+            writer.newLine();
         }
+        writer.write(sequences[0]);
+        writer.newLine();
+        writer.write(sequences[1]);
+        writer.newLine();
     }
 }
\ No newline at end of file
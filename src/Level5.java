@@ -4,8 +4,25 @@ import java.util.*;
 
 public class Level5 {
 
+    private static SolutionStore solutions = SolutionStore.disabled();
+    private static int threads = 1;
+    private static Shards shards = Shards.ALL;
+
+    // Margins beyond the first free cell around the asteroid tried for detour waypoints
+    private static final int[] BOX_MARGINS = {0, 1, 3, 6, 12, 24};
+
+    private static StrategyRegistry strategies = StrategyRegistry.DEFAULT;
+    private static CaseBudget budget = CaseBudget.UNLIMITED;
+    private static ProfileTable profiles = ProfileTable.DEFAULT;
+
+    // Keyed by canonical case with no time limit; a hit is the path a fresh solve of the case returns
+    private static final int PATH_CACHE_CAPACITY = 1 << 16;
+    private static final PathCache<String[]> PATH_CACHE = new PathCache<>(PATH_CACHE_CAPACITY);
+
     public static void main(String[] args) {
         try {
+            configure(args);
+
             String[] inputFiles = {
                 "level5_0_example.in",
                 "level5_1_small.in",
@@ -15,14 +32,51 @@ public class Level5 {
             for (String inputFile : inputFiles) {
                 if (Files.exists(Paths.get(inputFile))) {
                     processInputFile(inputFile);
+                } else if (Files.exists(Paths.get(inputFile + ".gz"))) {
+                    processInputFile(inputFile + ".gz");
                 }
             }
+            finish(args);
         } catch (Exception e) {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Reads the options this level understands; called once before any file is processed.
+     * --case-budget MS bounds the time of a case; --profile-table N sizes the 1D profile table.
+     */
+    static void configure(String[] args) throws IOException {
+        solutions = SolutionStore.fromArgs(args, "level5",
+                List.of("--profile-table", "--strategy-order", "--learn-strategy-order"),
+                Level5.class, ProfileTable.class, StrategyRegistry.class, PathCache.class);
+        threads = ParallelCases.threads(args);
+        shards = Shards.fromArgs(args);
+        strategies = StrategyRegistry.fromArgs(args);
+        budget = CaseBudget.fromArgs(args);
+        profiles = ProfileTable.fromArgs(args);
+        // Nothing solved before the level was configured, such as a server's warm-up, carries over
+        clearPathCache();
+    }
+
+    static void clearPathCache() {
+        PATH_CACHE.clear();
+    }
+
+    /** Closes the solution cache, reports on the caches and saves the strategy order if asked to. */
+    static void finish(String[] args) throws IOException {
+        solutions.close();
+        System.out.println("Solution cache: " + solutions.hits() + " hits, " + solutions.misses() + " misses");
+        System.out.println("Path cache: " + PATH_CACHE.hits() + " hits, " + PATH_CACHE.misses() + " misses");
+        System.out.println(budget.summary());
+
+        String saveOrder = Options.value(args, "--save-strategy-order");
+        if (saveOrder != null) {
+            strategies.save(Paths.get(saveOrder));
+        }
+    }
+
     private static void processInputFile(String inputFile) throws IOException {
         String fileName = Paths.get(inputFile).getFileName().toString();
         String outputFileName = fileName.replace(".in", ".out");
@@ -33,116 +87,222 @@ public class Level5 {
         }
 
         String outputFile = outputDir.resolve(outputFileName).toString();
-        List<String> results = processFile(inputFile);
-
-        writeResults(outputFile, results);
+        processFile(inputFile, outputFile);
         System.out.println("Output written to: " + outputFile);
     }
 
-    private static List<String> processFile(String inputFile) throws IOException {
-        List<String> results = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {
-            String firstLine = reader.readLine();
-            int n = Integer.parseInt(firstLine.trim());
+    /** Solves every case of the input file into the output file and returns the number of cases. */
+    static int processFile(String inputFile, String outputFile) throws IOException {
+        try (InputTokenizer tokens = InputTokenizer.open(Paths.get(inputFile));
+             ParallelCases.SolverPool pool = new ParallelCases.SolverPool(threads)) {
+            return shards.toFile(Paths.get(inputFile), Paths.get(outputFile),
+                    (out, journal) -> process(tokens, pool, shards, journal, out));
+        }
+    }
 
-            for (int i = 0; i < n; i++) {
-                String goalLine = reader.readLine();
-                String asteroidLine = reader.readLine();
+    /** Solves the cases read from tokens on the pool, writing results to out in input order. */
+    static int process(InputTokenizer tokens, ParallelCases.SolverPool pool, Shards shards, Journal journal,
+                       OutputEncoder out) throws IOException {
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: empty file");
+        }
 
-                String[] goalParts = goalLine.trim().split("\\s+");
-                String[] goalCoords = goalParts[0].split(",");
-                int goalX = Integer.parseInt(goalCoords[0]);
-                int goalY = Integer.parseInt(goalCoords[1]);
+        int n = tokens.nextInt();
+        tokens.skipLine();
 
-                String[] asteroidCoords = asteroidLine.trim().split(",");
-                int asteroidX = Integer.parseInt(asteroidCoords[0]);
-                int asteroidY = Integer.parseInt(asteroidCoords[1]);
+        return ParallelCases.pipeline(index -> readCase(tokens, n, index), pool, Level5::solveCase, shards,
+                journal, out, Level5::writeResult);
+    }
 
-                String[] sequences = findPath(goalX, goalY, asteroidX, asteroidY);
-                results.add(sequences[0]);
-                results.add(sequences[1]);
+    private static Case readCase(InputTokenizer tokens, int n, int index) throws IOException {
+        if (index == n) {
+            return null;
+        }
 
-                if (i < n - 1) {
-                    results.add("");
-                }
-            }
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: expected " + n + " cases, found only " + index);
         }
 
-        return results;
+        // Goal line "X,Y" (anything after the goal is ignored), then asteroid line "X,Y"
+        int goalX = tokens.nextInt();
+        tokens.expectComma();
+        int goalY = tokens.nextInt();
+        tokens.skipLine();
+
+        int asteroidX = tokens.nextInt();
+        tokens.expectComma();
+        int asteroidY = tokens.nextInt();
+        tokens.skipLine();
+
+        return new Case(index, goalX, goalY, asteroidX, asteroidY);
     }
 
-    private static String[] findPath(int goalX, int goalY, int asteroidX, int asteroidY) {
-        String[] direct = generateOptimalPath(goalX, goalY);
-        if (isSafe(direct[0], direct[1], asteroidX, asteroidY, goalX, goalY)) {
-            return direct;
+    private static class Case {
+        final int index;
+        final int goalX;
+        final int goalY;
+        final int asteroidX;
+        final int asteroidY;
+
+        Case(int index, int goalX, int goalY, int asteroidX, int asteroidY) {
+            this.index = index;
+            this.goalX = goalX;
+            this.goalY = goalY;
+            this.asteroidX = asteroidX;
+            this.asteroidY = asteroidY;
         }
+    }
 
-        String[] xFirst = generateSequentialPath(goalX, goalY, true);
-        if (isSafe(xFirst[0], xFirst[1], asteroidX, asteroidY, goalX, goalY)) {
-            return xFirst;
+    private static String[] solveCase(Case c) throws IOException {
+        // Cases solved by an earlier run come from the solution cache
+        String key = c.goalX + "," + c.goalY + " " + c.asteroidX + "," + c.asteroidY;
+        String cached = solutions.get(key);
+        if (cached == null) {
+            CaseBudget.Deadline deadline = budget.start();
+            String[] path = findPath(c.index, c.goalX, c.goalY, c.asteroidX, c.asteroidY, deadline);
+            budget.finish(deadline);
+            cached = path[0] + "\n" + path[1];
+
+            // A path cut short by the deadline is not worth keeping for runs with more time
+            if (!deadline.expired()) {
+                solutions.put(key, cached);
+            }
         }
+        return cached.split("\n");
+    }
 
-        String[] yFirst = generateSequentialPath(goalX, goalY, false);
-        if (isSafe(yFirst[0], yFirst[1], asteroidX, asteroidY, goalX, goalY)) {
-            return yFirst;
+    private static String[] findPath(int index, int goalX, int goalY, int asteroidX, int asteroidY,
+                                     CaseBudget.Deadline deadline) {
+        // Every case is solved in its canonical orientation, so a mirror image gets the same path mirrored
+        boolean flipX = PathCache.flips(goalX, asteroidX);
+        boolean flipY = PathCache.flips(goalY, asteroidY);
+        if (flipX || flipY) {
+            String[] path = findPath(index, flipX ? -goalX : goalX, flipY ? -goalY : goalY,
+                    flipX ? -asteroidX : asteroidX, flipY ? -asteroidY : asteroidY, deadline);
+            return mirrorPath(path, flipX, flipY);
         }
 
-        for (int offset = 3; offset <= 20; offset++) {
-            String[] upPath = generateUShapedPath(goalX, goalY, 0, offset);
-            if (isSafe(upPath[0], upPath[1], asteroidX, asteroidY, goalX, goalY)) {
-                return upPath;
-            }
-
-            String[] downPath = generateUShapedPath(goalX, goalY, 0, -offset);
-            if (isSafe(downPath[0], downPath[1], asteroidX, asteroidY, goalX, goalY)) {
-                return downPath;
-            }
+        // Repeats and mirror images of earlier cases come straight from the cache; there is no time limit
+        String[] cached = PATH_CACHE.get(goalX, goalY, asteroidX, asteroidY, Integer.MAX_VALUE);
+        if (cached != null) {
+            return cached;
+        }
 
-            String[] rightPath = generateUShapedPath(goalX, goalY, offset, 0);
-            if (isSafe(rightPath[0], rightPath[1], asteroidX, asteroidY, goalX, goalY)) {
-                return rightPath;
+        // Strategies that usually win for this kind of geometry go first
+        int bucket = StrategyRegistry.bucket(goalX, goalY, asteroidX, asteroidY);
+        int[] order = new int[StrategyRegistry.STRATEGIES];
+        strategies.order(bucket, order);
+
+        int[] checked = new int[1];
+        for (int strategy : order) {
+            String[] path = tryStrategy(strategy, goalX, goalY, asteroidX, asteroidY, deadline, checked);
+            // A strategy stopped by the deadline says nothing about how well it does
+            if (path != null || !deadline.expired()) {
+                strategies.record(bucket, strategy, checked[0], path != null);
             }
-
-            String[] leftPath = generateUShapedPath(goalX, goalY, -offset, 0);
-            if (isSafe(leftPath[0], leftPath[1], asteroidX, asteroidY, goalX, goalY)) {
-                return leftPath;
+            if (path != null) {
+                PATH_CACHE.put(goalX, goalY, asteroidX, asteroidY, Integer.MAX_VALUE, path);
+                return path;
             }
         }
 
-        for (int offset = 3; offset <= 100; offset += 5) {
-            int[][] detours = {
-                {0, offset}, {0, -offset}, {offset, 0}, {-offset, 0},
-                {offset, offset}, {-offset, offset}, {offset, -offset}, {-offset, -offset}
-            };
+        budget.unsafeFallback(index, deadline);
+        return generateOptimalPath(goalX, goalY);
+    }
 
-            for (int[] detour : detours) {
-                String[] path = generateDetourPath(goalX, goalY, detour[0], detour[1]);
-                if (isSafe(path[0], path[1], asteroidX, asteroidY, goalX, goalY)) {
-                    return path;
+    /**
+     * Safe path built by the given strategy, or null if it has none; checked[0] gets the candidates
+     * tried. Past the deadline the detour strategy gives up without trying its waypoints.
+     */
+    private static String[] tryStrategy(int strategy, int goalX, int goalY, int asteroidX, int asteroidY,
+                                        CaseBudget.Deadline deadline, int[] checked) {
+        checked[0] = 1;
+        switch (strategy) {
+            case StrategyRegistry.DIRECT:
+                return safeOrNull(generateOptimalPath(goalX, goalY), asteroidX, asteroidY, goalX, goalY);
+            case StrategyRegistry.X_FIRST:
+                return safeOrNull(generateSequentialPath(goalX, goalY, true), asteroidX, asteroidY, goalX, goalY);
+            case StrategyRegistry.Y_FIRST:
+                return safeOrNull(generateSequentialPath(goalX, goalY, false), asteroidX, asteroidY, goalX, goalY);
+            default:
+                checked[0] = 0;
+                for (int[] waypoint : boxWaypoints(goalX, goalY, asteroidX, asteroidY)) {
+                    if (deadline.expired()) {
+                        return null;
+                    }
+                    checked[0]++;
+                    String[] path = generateDetourPath(goalX, goalY, waypoint[0], waypoint[1]);
+                    if (isSafe(path[0], path[1], asteroidX, asteroidY, goalX, goalY)) {
+                        return path;
+                    }
                 }
-            }
+                return null;
         }
+    }
 
-        return direct;
+    // Negating the paces of an axis mirrors the path across it
+    private static String[] mirrorPath(String[] path, boolean flipX, boolean flipY) {
+        return new String[]{flipX ? negateSeq(path[0]) : path[0], flipY ? negateSeq(path[1]) : path[1]};
     }
 
-    private static String[] generateUShapedPath(int goalX, int goalY, int detourX, int detourY) {
-        List<Integer> xPaces = new ArrayList<>();
-        List<Integer> yPaces = new ArrayList<>();
+    private static String negateSeq(String seq) {
+        List<Integer> paces = parseSeq(seq);
+        for (int i = 0; i < paces.size(); i++) {
+            paces.set(i, -paces.get(i));
+        }
+        return toSeqString(paces);
+    }
 
-        xPaces.add(0);
-        yPaces.add(0);
+    private static String[] safeOrNull(String[] path, int asteroidX, int asteroidY, int goalX, int goalY) {
+        return isSafe(path[0], path[1], asteroidX, asteroidY, goalX, goalY) ? path : null;
+    }
+
+    /**
+     * Detour waypoints just outside the corners of the asteroid's 5x5 box: each corner itself, its
+     * projections onto the start and goal rows/columns, and a box-sized head start on one axis.
+     * Shortest detours (by pace count of the two legs) come first.
+     */
+    private static List<int[]> boxWaypoints(int goalX, int goalY, int asteroidX, int asteroidY) {
+        List<int[]> waypoints = new ArrayList<>();
+
+        for (int margin : BOX_MARGINS) {
+            int reach = 3 + margin;
+
+            for (int side = -1; side <= 1; side += 2) {
+                int cornerX = asteroidX + side * reach;
+                int cornerY = asteroidY + side * reach;
+                addBoxWaypoint(waypoints, goalX, goalY, side * reach, 0);
+                addBoxWaypoint(waypoints, goalX, goalY, 0, side * reach);
+                addBoxWaypoint(waypoints, goalX, goalY, 0, cornerY);
+                addBoxWaypoint(waypoints, goalX, goalY, goalX, cornerY);
+                addBoxWaypoint(waypoints, goalX, goalY, cornerX, 0);
+                addBoxWaypoint(waypoints, goalX, goalY, cornerX, goalY);
+            }
+
+            for (int sideX = -1; sideX <= 1; sideX += 2) {
+                for (int sideY = -1; sideY <= 1; sideY += 2) {
+                    addBoxWaypoint(waypoints, goalX, goalY, asteroidX + sideX * reach, asteroidY + sideY * reach);
+                }
+            }
+        }
 
-        List<Integer> dx = generatePaceSequence(detourX);
-        List<Integer> dy = generatePaceSequence(detourY);
-        addSegment(xPaces, yPaces, dx, dy);
+        waypoints.sort(Comparator.comparingInt(waypoint -> detourLength(goalX, goalY, waypoint[0], waypoint[1])));
+        return waypoints;
+    }
 
-        List<Integer> gx = generatePaceSequence(goalX - detourX);
-        List<Integer> gy = generatePaceSequence(goalY - detourY);
-        addSegment(xPaces, yPaces, gx, gy);
+    // A waypoint on the start or the goal is just the direct path again
+    private static void addBoxWaypoint(List<int[]> waypoints, int goalX, int goalY, int x, int y) {
+        if ((x == 0 && y == 0) || (x == goalX && y == goalY)) {
+            return;
+        }
+        waypoints.add(new int[]{x, y});
+    }
 
-        return new String[]{toSeqString(xPaces), toSeqString(yPaces)};
+    // Paces in generateDetourPath: each leg is as long as its longer axis
+    private static int detourLength(int goalX, int goalY, int waypointX, int waypointY) {
+        int firstLeg = Math.max(Math.abs(waypointX), Math.abs(waypointY));
+        int secondLeg = Math.max(Math.abs(goalX - waypointX), Math.abs(goalY - waypointY));
+        return firstLeg + secondLeg;
     }
 
     private static String[] generateOptimalPath(int goalX, int goalY) {
@@ -179,40 +339,9 @@ public class Level5 {
         }
     }
 
+    // Minimum-time profile of the distance: a shared, read-only list from the profile table
     private static List<Integer> generatePaceSequence(int distance) {
-        List<Integer> paces = new ArrayList<>();
-        paces.add(0);
-
-        if (distance == 0) {
-            paces.add(0);
-            return paces;
-        }
-
-        int absDistance = Math.abs(distance);
-        int direction = distance > 0 ? 1 : -1;
-
-        int minPace = (int) Math.ceil((11.0 - absDistance) / 2.0);
-        if (minPace < 1) minPace = 1;
-        if (minPace > 5) minPace = 5;
-
-        int accelMoves = 5 - minPace + 1;
-        int decelMoves = 5 - minPace;
-        int cruiseMoves = absDistance - accelMoves - decelMoves;
-
-        for (int pace = 5; pace >= minPace; pace--) {
-            paces.add(pace * direction);
-        }
-
-        for (int i = 0; i < cruiseMoves; i++) {
-            paces.add(minPace * direction);
-        }
-
-        for (int pace = minPace + 1; pace <= 5; pace++) {
-            paces.add(pace * direction);
-        }
-
-        paces.add(0);
-        return paces;
+        return profiles.profile(distance);
     }
 
     private static String[] generateDetourPath(int goalX, int goalY, int waypointX, int waypointY) {
@@ -245,9 +374,8 @@ public class Level5 {
     }
 
     private static String[] padAndFormat(List<Integer> xPaces, List<Integer> yPaces) {
-        while (xPaces.size() < yPaces.size()) xPaces.add(0);
-        while (yPaces.size() < xPaces.size()) yPaces.add(0);
-        return new String[]{toSeqString(xPaces), toSeqString(yPaces)};
+        int length = Math.max(xPaces.size(), yPaces.size());
+        return new String[]{toSeqString(xPaces, length), toSeqString(yPaces, length)};
     }
 
     private static boolean isSafe(String xSeq, String ySeq, int asteroidX, int asteroidY,
@@ -264,6 +392,8 @@ public class Level5 {
         }
 
         int maxSteps = Math.max(xPaces.size(), yPaces.size());
+        int[] xBand = new int[2];
+        int[] yBand = new int[2];
 
         for (int step = 0; step < maxSteps; step++) {
             if (step < xPaces.size()) vx = xPaces.get(step);
@@ -276,34 +406,84 @@ public class Level5 {
             int ySteps = Math.abs(vy) > 0 ? Math.abs(vy) : 1;
             int maxTicks = Math.max(xSteps, ySteps);
 
-            for (int tick = 0; tick < maxTicks; tick++) {
-                if (vx != 0) {
-                    tickX++;
-                    if (tickX >= Math.abs(vx)) {
-                        tickX = 0;
-                        x += (vx > 0) ? 1 : -1;
-                    }
-                } else {
-                    tickX = 0;
-                }
+            int firstX = firstMoveTick(vx, tickX, maxTicks);
+            int firstY = firstMoveTick(vy, tickY, maxTicks);
+            int movesX = movesAfter(vx, firstX, maxTicks);
+            int movesY = movesAfter(vy, firstY, maxTicks);
+
+            // Both coordinates are monotone within a step, so the ticks spent near the asteroid on each
+            // axis form one interval; the step collides exactly when the two intervals overlap
+            bandTicks(x, vx, firstX, movesX, asteroidX, maxTicks, xBand);
+            bandTicks(y, vy, firstY, movesY, asteroidY, maxTicks, yBand);
+            if (Math.max(xBand[0], yBand[0]) <= Math.min(xBand[1], yBand[1])) {
+                return false;
+            }
 
-                if (vy != 0) {
-                    tickY++;
-                    if (tickY >= Math.abs(vy)) {
-                        tickY = 0;
-                        y += (vy > 0) ? 1 : -1;
-                    }
-                } else {
-                    tickY = 0;
-                }
+            x += Integer.signum(vx) * movesX;
+            y += Integer.signum(vy) * movesY;
+            tickX = ticksAfter(vx, tickX, firstX, maxTicks);
+            tickY = ticksAfter(vy, tickY, firstY, maxTicks);
+        }
 
-                if (Math.abs(x - asteroidX) <= 2 && Math.abs(y - asteroidY) <= 2) {
-                    return false;
-                }
+        return x == goalX && y == goalY && vx == 0 && vy == 0;
+    }
+
+    // First tick of the step on which the axis moves, or 0 if it does not move during the step
+    private static int firstMoveTick(int pace, int tick, int maxTicks) {
+        if (pace == 0) {
+            return 0;
+        }
+        int first = Math.max(1, Math.abs(pace) - tick);
+        return (first <= maxTicks) ? first : 0;
+    }
+
+    // Cells moved by the end of tick k of the step
+    private static int movesAfter(int pace, int first, int k) {
+        if (first == 0 || k < first) {
+            return 0;
+        }
+        return 1 + (k - first) / Math.abs(pace);
+    }
+
+    // Tick counter carried into the next step
+    private static int ticksAfter(int pace, int tick, int first, int maxTicks) {
+        if (pace == 0) {
+            return 0;
+        }
+        if (first == 0) {
+            return tick + maxTicks;
+        }
+        return (maxTicks - first) % Math.abs(pace);
+    }
+
+    /**
+     * Writes the first and last tick of the step (1..maxTicks) on which the coordinate is within 2 of
+     * center into range; range[0] > range[1] if it never is.
+     */
+    private static void bandTicks(int pos, int pace, int first, int moves, int center, int maxTicks,
+                                  int[] range) {
+        range[0] = maxTicks + 1;
+        range[1] = maxTicks;
+
+        if (moves == 0) {
+            if (Math.abs(pos - center) <= 2) {
+                range[0] = 1;
             }
+            return;
         }
 
-        return x == goalX && y == goalY && vx == 0 && vy == 0;
+        // Range of move counts that put the coordinate inside the band
+        int low = (pace > 0) ? center - 2 - pos : pos - center - 2;
+        int high = (pace > 0) ? center + 2 - pos : pos - center + 2;
+        low = Math.max(low, 0);
+        high = Math.min(high, moves);
+        if (low > high) {
+            return;
+        }
+
+        int period = Math.abs(pace);
+        range[0] = (low == 0) ? 1 : first + (low - 1) * period;
+        range[1] = (high == moves) ? maxTicks : first + high * period - 1;
     }
 
     private static List<Integer> parseSeq(String seq) {
@@ -319,20 +499,27 @@ public class Level5 {
     }
 
     private static String toSeqString(List<Integer> seq) {
+        return toSeqString(seq, seq.size());
+    }
+
+    // The sequence padded with trailing zeros to the given length
+    private static String toSeqString(List<Integer> seq, int length) {
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < seq.size(); i++) {
+        for (int i = 0; i < length; i++) {
             if (i > 0) sb.append(" ");
-            sb.append(seq.get(i));
+            sb.append((i < seq.size()) ? seq.get(i) : 0);
         }
         return sb.toString();
     }
 
-    private static void writeResults(String outputFile, List<String> results) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            for (String result : results) {
-                writer.write(result);
-                writer.newLine();
-            }
+    // Cases are separated by a blank line
+    private static void writeResult(OutputEncoder writer, int index, String[] sequences) throws IOException {
+        if (index > 0) {
+            writer.newLine();
         }
+        writer.write(sequences[0]);
+        writer.newLine();
+        writer.write(sequences[1]);
+        writer.newLine();
     }
 }
@@ -1,11 +1,38 @@
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class Level6 {
 
+    private static SolutionStore solutions = SolutionStore.disabled();
+    private static int threads = 1;
+    private static Shards shards = Shards.ALL;
+
+    private static StrategyRegistry strategies = StrategyRegistry.DEFAULT;
+    private static CaseBudget budget = CaseBudget.UNLIMITED;
+    private static ProfileTable profiles = ProfileTable.DEFAULT;
+
+    private static final int PATH_CACHE_CAPACITY = 1 << 16;
+    private static final PathCache<int[][]> PATH_CACHE = new PathCache<>(PATH_CACHE_CAPACITY);
+
+    // Goal range of the precomputed answer table when --table-range is not given
+    private static final int DEFAULT_TABLE_RANGE = 100;
+    private static Level6Table answerTable;
+
     public static void main(String[] args) {
         try {
+            configure(args);
+
+            // --build-table FILE only generates the answer table
+            String buildTable = Options.value(args, "--build-table");
+            if (buildTable != null) {
+                String range = Options.value(args, "--table-range");
+                buildTable(Paths.get(buildTable), (range != null) ? Integer.parseInt(range) : DEFAULT_TABLE_RANGE);
+                return;
+            }
+
             String[] inputFiles = {
                 "level6_0_example.in",
                 "level6_1_small.in",
@@ -15,14 +42,57 @@ public class Level6 {
             for (String inputFile : inputFiles) {
                 if (Files.exists(Paths.get(inputFile))) {
                     processInputFile(inputFile);
+                } else if (Files.exists(Paths.get(inputFile + ".gz"))) {
+                    processInputFile(inputFile + ".gz");
                 }
             }
+            finish(args);
         } catch (Exception e) {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Reads the options this level understands; called once before any file is processed. --table
+     * FILE answers cases from a precomputed answer table; --case-budget MS bounds the time of a case;
+     * --profile-table N sizes the 1D profile table.
+     */
+    static void configure(String[] args) throws IOException {
+        solutions = SolutionStore.fromArgs(args, "level6",
+                List.of("--profile-table", "--strategy-order", "--learn-strategy-order", "--table"),
+                Level6.class, ProfileTable.class, StrategyRegistry.class, PathCache.class, Level6Table.class);
+        threads = ParallelCases.threads(args);
+        shards = Shards.fromArgs(args);
+        strategies = StrategyRegistry.fromArgs(args);
+        budget = CaseBudget.fromArgs(args);
+        profiles = ProfileTable.fromArgs(args);
+        // Nothing solved before the level was configured, such as a server's warm-up, carries over
+        clearPathCache();
+
+        String table = Options.value(args, "--table");
+        if (table != null) {
+            answerTable = Level6Table.open(Paths.get(table));
+        }
+    }
+
+    static void clearPathCache() {
+        PATH_CACHE.clear();
+    }
+
+    /** Closes the solution cache, reports on the caches and saves the strategy order if asked to. */
+    static void finish(String[] args) throws IOException {
+        solutions.close();
+        System.out.println("Solution cache: " + solutions.hits() + " hits, " + solutions.misses() + " misses");
+        System.out.println("Path cache: " + PATH_CACHE.hits() + " hits, " + PATH_CACHE.misses() + " misses");
+        System.out.println(budget.summary());
+
+        String saveOrder = Options.value(args, "--save-strategy-order");
+        if (saveOrder != null) {
+            strategies.save(Paths.get(saveOrder));
+        }
+    }
+
     private static void processInputFile(String inputFile) throws IOException {
         String fileName = Paths.get(inputFile).getFileName().toString();
         String outputFileName = fileName.replace(".in", ".out");
@@ -33,267 +103,751 @@ public class Level6 {
         }
 
         String outputFile = outputDir.resolve(outputFileName).toString();
-        List<String> results = processFile(inputFile);
-
-        writeResults(outputFile, results);
+        processFile(inputFile, outputFile);
         System.out.println("Output written to: " + outputFile);
     }
 
-    private static List<String> processFile(String inputFile) throws IOException {
-        List<String> results = new ArrayList<>();
+    /** Solves every case of the input file into the output file and returns the number of cases. */
+    static int processFile(String inputFile, String outputFile) throws IOException {
+        try (InputTokenizer tokens = InputTokenizer.open(Paths.get(inputFile));
+             ParallelCases.SolverPool pool = new ParallelCases.SolverPool(threads)) {
+            return shards.toFile(Paths.get(inputFile), Paths.get(outputFile),
+                    (out, journal) -> process(tokens, pool, shards, journal, out));
+        }
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {
-            String firstLine = reader.readLine();
-            int n = Integer.parseInt(firstLine.trim());
+    /** Solves the cases read from tokens on the pool, writing results to out in input order. */
+    static int process(InputTokenizer tokens, ParallelCases.SolverPool pool, Shards shards, Journal journal,
+                       OutputEncoder out) throws IOException {
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: empty file");
+        }
 
-            for (int i = 0; i < n; i++) {
-                String goalLine = reader.readLine();
-                String asteroidLine = reader.readLine();
+        int n = tokens.nextInt();
+        tokens.skipLine();
 
-                String[] goalParts = goalLine.trim().split("\\s+");
-                String[] goalCoords = goalParts[0].split(",");
-                int goalX = Integer.parseInt(goalCoords[0]);
-                int goalY = Integer.parseInt(goalCoords[1]);
-                int timeLimit = Integer.parseInt(goalParts[1]);
+        return ParallelCases.pipeline(index -> readCase(tokens, n, index), pool, Level6::solveCase, shards,
+                journal, out, Level6::writeResult);
+    }
 
-                String[] asteroidCoords = asteroidLine.trim().split(",");
-                int asteroidX = Integer.parseInt(asteroidCoords[0]);
-                int asteroidY = Integer.parseInt(asteroidCoords[1]);
+    private static Case readCase(InputTokenizer tokens, int n, int index) throws IOException {
+        if (index == n) {
+            return null;
+        }
 
-                String[] sequences = findPath(goalX, goalY, asteroidX, asteroidY, timeLimit);
-                results.add(sequences[0]);
-                results.add(sequences[1]);
+        if (tokens.atEnd()) {
+            throw new IOException("Invalid input: expected " + n + " cases, found only " + index);
+        }
 
-                if (i < n - 1) {
-                    results.add("");
-                }
-            }
+        // Goal line "X,Y timeLimit", then asteroid line "X,Y"
+        int goalX = tokens.nextInt();
+        tokens.expectComma();
+        int goalY = tokens.nextInt();
+        int timeLimit = tokens.nextInt();
+        tokens.skipLine();
+
+        int asteroidX = tokens.nextInt();
+        tokens.expectComma();
+        int asteroidY = tokens.nextInt();
+        tokens.skipLine();
+
+        return new Case(index, goalX, goalY, timeLimit, asteroidX, asteroidY);
+    }
+
+    private static class Case {
+        final int index;
+        final int goalX;
+        final int goalY;
+        final int timeLimit;
+        final int asteroidX;
+        final int asteroidY;
+
+        Case(int index, int goalX, int goalY, int timeLimit, int asteroidX, int asteroidY) {
+            this.index = index;
+            this.goalX = goalX;
+            this.goalY = goalY;
+            this.timeLimit = timeLimit;
+            this.asteroidX = asteroidX;
+            this.asteroidY = asteroidY;
         }
+    }
 
-        return results;
+    private static int[][] solveCase(Case c) throws IOException {
+        // Cases solved by an earlier run come from the solution cache
+        String key = c.goalX + "," + c.goalY + " " + c.timeLimit + " " + c.asteroidX + "," + c.asteroidY;
+        String cached = solutions.get(key);
+        if (cached != null) {
+            return parsePath(cached);
+        }
+        CaseBudget.Deadline deadline = budget.start();
+        int[][] path = findPath(c.index, c.goalX, c.goalY, c.asteroidX, c.asteroidY, c.timeLimit, deadline);
+        budget.finish(deadline);
+
+        // A path cut short by the deadline is not worth keeping for runs with more time
+        if (!deadline.expired()) {
+            solutions.put(key, toSeqString(path[0]) + "\n" + toSeqString(path[1]));
+        }
+        return path;
     }
 
-    private static String[] findPath(int goalX, int goalY, int asteroidX, int asteroidY, int timeLimit) {
-        // Strategy 1: Try direct diagonal path
-        String[] direct = generateOptimalPath(goalX, goalY);
-        if (isSafe(direct[0], direct[1], asteroidX, asteroidY, goalX, goalY, timeLimit)) {
-            return direct;
+    private static int[][] findPath(int index, int goalX, int goalY, int asteroidX, int asteroidY, int timeLimit,
+                                    CaseBudget.Deadline deadline) {
+        // Every case is solved in its canonical orientation, so a mirror image gets the same path mirrored
+        boolean flipX = PathCache.flips(goalX, asteroidX);
+        boolean flipY = PathCache.flips(goalY, asteroidY);
+        if (flipX || flipY) {
+            int[][] path = findPath(index, flipX ? -goalX : goalX, flipY ? -goalY : goalY,
+                    flipX ? -asteroidX : asteroidX, flipY ? -asteroidY : asteroidY, timeLimit, deadline);
+            return mirrorPath(path, flipX, flipY);
+        }
+
+        // Cases inside the precomputed domain are a table lookup
+        if (answerTable != null) {
+            int[][] tabled = answerTable.lookup(goalX, goalY, asteroidX, asteroidY, timeLimit, UNREACHABLE);
+            if (tabled == UNREACHABLE) {
+                budget.unsafeFallback(index, deadline);
+                return fallbackPath(goalX, goalY);
+            }
+            if (tabled != null) {
+                return tabled;
+            }
         }
 
-        // Strategy 2: Try sequential X-first path
-        String[] xFirst = generateSequentialPath(goalX, goalY, true);
-        if (isSafe(xFirst[0], xFirst[1], asteroidX, asteroidY, goalX, goalY, timeLimit)) {
-            return xFirst;
+        // Repeats and mirror images of earlier cases come straight from the cache
+        int[][] cached = PATH_CACHE.get(goalX, goalY, asteroidX, asteroidY, timeLimit);
+        if (cached != null) {
+            return cached;
         }
 
-        // Strategy 3: Try sequential Y-first path
-        String[] yFirst = generateSequentialPath(goalX, goalY, false);
-        if (isSafe(yFirst[0], yFirst[1], asteroidX, asteroidY, goalX, goalY, timeLimit)) {
-            return yFirst;
+        // Exact minimum-time search; the heuristic ladder below only runs if it gives up
+        int[][] searched = searchPath(goalX, goalY, asteroidX, asteroidY, timeLimit, deadline);
+        if (searched != null && searched != UNREACHABLE) {
+            PATH_CACHE.put(goalX, goalY, asteroidX, asteroidY, timeLimit, searched);
+            return searched;
         }
 
-        // Strategy 4: Try small U-shaped detours (faster than large ones)
-        for (int offset = 3; offset <= 15; offset++) {
-            // Try all four cardinal directions
-            String[] upPath = generateUShapedPath(goalX, goalY, 0, offset);
-            if (isSafe(upPath[0], upPath[1], asteroidX, asteroidY, goalX, goalY, timeLimit)) {
-                return upPath;
+        Workspace ws = WORKSPACE.get();
+        if (searched == null && tryStrategies(ws, goalX, goalY, asteroidX, asteroidY, timeLimit, deadline)) {
+            int[][] path = ws.toPath();
+            if (!deadline.expired()) {
+                PATH_CACHE.put(goalX, goalY, asteroidX, asteroidY, timeLimit, path);
             }
+            return path;
+        }
 
-            String[] downPath = generateUShapedPath(goalX, goalY, 0, -offset);
-            if (isSafe(downPath[0], downPath[1], asteroidX, asteroidY, goalX, goalY, timeLimit)) {
-                return downPath;
+        budget.unsafeFallback(index, deadline);
+        return fallbackPath(goalX, goalY);
+    }
+
+    // Fallback: return direct path even if not ideal
+    private static int[][] fallbackPath(int goalX, int goalY) {
+        Workspace ws = WORKSPACE.get();
+        generateOptimalPath(ws, goalX, goalY);
+        return ws.toPath();
+    }
+
+    /**
+     * Solves every case in the domain of Level6Table up to the given goal range and writes the table.
+     * The goals of one row are solved in parallel and then added in order, so the pool stays in
+     * cell order without holding the whole table's paths in memory.
+     */
+    private static void buildTable(Path file, int range) throws IOException {
+        if (range < 0 || range > SEARCH_RANGE / 2) {
+            throw new IllegalArgumentException("Table range must be between 0 and " + SEARCH_RANGE / 2);
+        }
+
+        try (Level6Table.Builder builder = new Level6Table.Builder(file, range)) {
+            for (int goalX = 0; goalX <= range; goalX++) {
+                int row = goalX;
+                List<GoalAnswers> answers = IntStream.rangeClosed(0, range).parallel()
+                        .mapToObj(goalY -> solveGoal(row, goalY))
+                        .collect(Collectors.toList());
+
+                for (GoalAnswers goal : answers) {
+                    int[] ids = new int[goal.paths.size()];
+                    for (int i = 0; i < ids.length; i++) {
+                        int[][] path = goal.paths.get(i);
+                        ids[i] = builder.addPath(path, pathTime(path), !goal.inexact.get(i));
+                    }
+                    int first = builder.goalCell(goal.goalX, goal.goalY);
+                    for (int i = 0; i < goal.cells.length; i++) {
+                        int cell = goal.cells[i];
+                        builder.setCell(first + i, (cell >= 0) ? ids[cell] : cell);
+                    }
+                }
+                System.out.println("Answer table: goal row " + goalX + " of " + range + " solved");
             }
+            builder.finish();
+        }
+        System.out.println("Answer table written to: " + file);
+    }
 
-            String[] rightPath = generateUShapedPath(goalX, goalY, offset, 0);
-            if (isSafe(rightPath[0], rightPath[1], asteroidX, asteroidY, goalX, goalY, timeLimit)) {
-                return rightPath;
+    /**
+     * Answers for every asteroid in the rectangle of one canonical goal. Asteroids clear of the
+     * unobstructed minimum-time path reuse it; the rest get their own search.
+     */
+    private static GoalAnswers solveGoal(int goalX, int goalY) {
+        Workspace ws = WORKSPACE.get();
+        GoalAnswers answers = new GoalAnswers(goalX, goalY);
+
+        // An asteroid this far away never constrains the search
+        int[][] free = searchPath(goalX, goalY, goalX + 2 * SEARCH_RANGE, goalY + 2 * SEARCH_RANGE, Integer.MAX_VALUE,
+                CaseBudget.NEVER);
+        answers.paths.add(free);
+
+        int cell = 0;
+        for (int asteroidX = 0; asteroidX <= goalX; asteroidX++) {
+            for (int asteroidY = 0; asteroidY <= goalY; asteroidY++) {
+                answers.cells[cell++] = solveCell(ws, answers, free, goalX, goalY, asteroidX, asteroidY);
             }
+        }
+        return answers;
+    }
+
+    private static int solveCell(Workspace ws, GoalAnswers answers, int[][] free, int goalX, int goalY,
+                                 int asteroidX, int asteroidY) {
+        ws.loadPath(free);
+        for (SimulationTrace trace : ws.traces) {
+            trace.reset();
+        }
+        if (isSafe(ws, asteroidX, asteroidY, goalX, goalY, Integer.MAX_VALUE)) {
+            return 0;
+        }
 
-            String[] leftPath = generateUShapedPath(goalX, goalY, -offset, 0);
-            if (isSafe(leftPath[0], leftPath[1], asteroidX, asteroidY, goalX, goalY, timeLimit)) {
-                return leftPath;
+        int[][] searched = searchPath(goalX, goalY, asteroidX, asteroidY, Integer.MAX_VALUE, CaseBudget.NEVER);
+        if (searched == UNREACHABLE) {
+            return Level6Table.NO_PATH;
+        }
+        if (searched != null) {
+            answers.paths.add(searched);
+            return answers.paths.size() - 1;
+        }
+        if (tryStrategies(ws, goalX, goalY, asteroidX, asteroidY, Integer.MAX_VALUE, CaseBudget.NEVER)) {
+            answers.inexact.set(answers.paths.size());
+            answers.paths.add(ws.toPath());
+            return answers.paths.size() - 1;
+        }
+        return Level6Table.UNSOLVED;
+    }
+
+    // Paths of one goal for the answer table; cells hold an index into paths or a Level6Table marker
+    private static final class GoalAnswers {
+        final int goalX;
+        final int goalY;
+        final int[] cells;
+        final List<int[][]> paths = new ArrayList<>();
+        final BitSet inexact = new BitSet();
+
+        GoalAnswers(int goalX, int goalY) {
+            this.goalX = goalX;
+            this.goalY = goalY;
+            this.cells = new int[(goalX + 1) * (goalY + 1)];
+        }
+    }
+
+    private static int pathTime(int[][] path) {
+        int xTime = 0;
+        for (int pace : path[0]) {
+            xTime += Math.max(1, Math.abs(pace));
+        }
+        int yTime = 0;
+        for (int pace : path[1]) {
+            yTime += Math.max(1, Math.abs(pace));
+        }
+        return Math.max(xTime, yTime);
+    }
+
+    // Negating the paces of an axis mirrors the path across it
+    private static int[][] mirrorPath(int[][] path, boolean flipX, boolean flipY) {
+        return new int[][]{flipX ? negate(path[0]) : path[0], flipY ? negate(path[1]) : path[1]};
+    }
+
+    private static int[] negate(int[] paces) {
+        int[] negated = new int[paces.length];
+        for (int i = 0; i < paces.length; i++) {
+            negated[i] = -paces[i];
+        }
+        return negated;
+    }
+
+    /**
+     * Builds candidates into the workspace buffers until one is safe; returns true with that candidate
+     * left in ws.xPaces / ws.yPaces. Past the deadline only the single-candidate strategies still run.
+     */
+    private static boolean tryStrategies(Workspace ws, int goalX, int goalY, int asteroidX, int asteroidY,
+                                         int timeLimit, CaseBudget.Deadline deadline) {
+        for (SimulationTrace trace : ws.traces) {
+            trace.reset();
+        }
+
+        // Strategies that usually win for this kind of geometry go first
+        int bucket = StrategyRegistry.bucket(goalX, goalY, asteroidX, asteroidY);
+        int[] order = ws.strategyOrder;
+        strategies.order(bucket, order);
+
+        for (int strategy : order) {
+            ws.candidatesChecked = 0;
+            boolean won = tryStrategy(ws, strategy, goalX, goalY, asteroidX, asteroidY, timeLimit, deadline);
+            // A strategy stopped by the deadline says nothing about how well it does
+            if (won || !deadline.expired()) {
+                strategies.record(bucket, strategy, ws.candidatesChecked, won);
+            }
+            if (won) {
+                return true;
             }
         }
 
-        // Strategy 5: Try diagonal detours
-        for (int offset = 3; offset <= 12; offset++) {
-            int[][] detours = {
-                {offset, offset}, {-offset, offset}, {offset, -offset}, {-offset, -offset}
-            };
+        return false;
+    }
 
-            for (int[] detour : detours) {
-                String[] path = generateDetourPath(goalX, goalY, detour[0], detour[1]);
-                if (isSafe(path[0], path[1], asteroidX, asteroidY, goalX, goalY, timeLimit)) {
-                    return path;
-                }
+    // Leaves the first safe candidate of the strategy in the workspace and counts what it tried
+    private static boolean tryStrategy(Workspace ws, int strategy, int goalX, int goalY, int asteroidX,
+                                       int asteroidY, int timeLimit, CaseBudget.Deadline deadline) {
+        ws.candidatesChecked = 1;
+        switch (strategy) {
+            case StrategyRegistry.DIRECT:
+                generateOptimalPath(ws, goalX, goalY);
+                return isSafe(ws, asteroidX, asteroidY, goalX, goalY, timeLimit);
+            case StrategyRegistry.X_FIRST:
+                generateSequentialPath(ws, goalX, goalY, true);
+                return isSafe(ws, asteroidX, asteroidY, goalX, goalY, timeLimit);
+            case StrategyRegistry.Y_FIRST:
+                generateSequentialPath(ws, goalX, goalY, false);
+                return isSafe(ws, asteroidX, asteroidY, goalX, goalY, timeLimit);
+            default:
+                break;
+        }
+
+        // Detour via waypoints taken from the corners of the asteroid's exclusion box
+        addBoxWaypoints(ws, goalX, goalY, asteroidX, asteroidY);
+
+        // Only build and simulate the detours that can still make the time limit, fastest first
+        int count = rankWaypoints(ws, goalX, goalY, timeLimit);
+        ws.candidatesChecked = 0;
+        for (int i = 0; i < count && !deadline.expired(); i++) {
+            ws.candidatesChecked++;
+            int index = (int) ws.ranking[i];
+            generateDetourPath(ws, goalX, goalY, ws.waypointX[index], ws.waypointY[index]);
+            if (isSafe(ws, asteroidX, asteroidY, goalX, goalY, timeLimit)) {
+                return true;
             }
         }
 
-        // Strategy 6: Try more complex mixed detours
-        for (int dx = -10; dx <= 10; dx += 3) {
-            for (int dy = -10; dy <= 10; dy += 3) {
-                if (dx == 0 && dy == 0) continue;
-                String[] path = generateDetourPath(goalX, goalY, dx, dy);
-                if (isSafe(path[0], path[1], asteroidX, asteroidY, goalX, goalY, timeLimit)) {
-                    return path;
+        return false;
+    }
+
+    /**
+     * Collects waypoints just outside the corners of the asteroid's 5x5 box: each corner itself, its
+     * projections onto the start and goal rows/columns so that one leg only moves along a single axis,
+     * and a box-sized head start on one axis, which lets the axes pass the box at different times.
+     * Wider margins give the legs room when the two axes drift apart in time.
+     */
+    private static void addBoxWaypoints(Workspace ws, int goalX, int goalY, int asteroidX, int asteroidY) {
+        ws.clearWaypoints();
+
+        for (int margin : BOX_MARGINS) {
+            int reach = 3 + margin;
+
+            for (int side = -1; side <= 1; side += 2) {
+                int cornerX = asteroidX + side * reach;
+                int cornerY = asteroidY + side * reach;
+                addBoxWaypoint(ws, goalX, goalY, side * reach, 0);
+                addBoxWaypoint(ws, goalX, goalY, 0, side * reach);
+                addBoxWaypoint(ws, goalX, goalY, 0, cornerY);
+                addBoxWaypoint(ws, goalX, goalY, goalX, cornerY);
+                addBoxWaypoint(ws, goalX, goalY, cornerX, 0);
+                addBoxWaypoint(ws, goalX, goalY, cornerX, goalY);
+            }
+
+            for (int sideX = -1; sideX <= 1; sideX += 2) {
+                for (int sideY = -1; sideY <= 1; sideY += 2) {
+                    addBoxWaypoint(ws, goalX, goalY, asteroidX + sideX * reach, asteroidY + sideY * reach);
                 }
             }
         }
+    }
+
+    // A waypoint on the start or the goal is just the direct path again
+    private static void addBoxWaypoint(Workspace ws, int goalX, int goalY, int x, int y) {
+        if ((x == 0 && y == 0) || (x == goalX && y == goalY)) {
+            return;
+        }
+        ws.addWaypoint(x, y);
+    }
+
+    /**
+     * Drops waypoints whose detour cannot fit the time limit and sorts the rest by their exact time,
+     * keeping strategy order among equal times. Returns the number of entries left in ws.ranking.
+     */
+    private static int rankWaypoints(Workspace ws, int goalX, int goalY, int timeLimit) {
+        int count = 0;
+        for (int i = 0; i < ws.waypointCount; i++) {
+            int time = detourTime(goalX, goalY, ws.waypointX[i], ws.waypointY[i]);
+            if (time <= timeLimit) {
+                ws.ranking[count++] = ((long) time << 32) | i;
+            }
+        }
+        Arrays.sort(ws.ranking, 0, count);
+        return count;
+    }
+
+    // Time of generateDetourPath(goal, waypoint) from the closed-form profile of each leg
+    private static int detourTime(int goalX, int goalY, int waypointX, int waypointY) {
+        int remainingX = goalX - waypointX;
+        int remainingY = goalY - waypointY;
+        int firstLeg = Math.max(profileLength(waypointX), profileLength(waypointY));
+        int secondLeg = Math.max(profileLength(remainingX), profileLength(remainingY));
+
+        // Both legs share the 0 between them; addSegment pads each leg with 1-tick zeros
+        int xTime = legTime(waypointX, firstLeg) + legTime(remainingX, secondLeg) - 1;
+        int yTime = legTime(waypointY, firstLeg) + legTime(remainingY, secondLeg) - 1;
+        return Math.max(xTime, yTime);
+    }
 
-        // Fallback: return direct path even if not ideal
-        return direct;
+    private static int legTime(int distance, int paddedLength) {
+        return profileTime(distance) + paddedLength - profileLength(distance);
     }
 
-    private static String[] generateOptimalPath(int goalX, int goalY) {
-        List<Integer> xPaces = generatePaceSequence(goalX);
-        List<Integer> yPaces = generatePaceSequence(goalY);
-        return padAndFormat(xPaces, yPaces);
+    // A profile has one pace per cell plus the leading and trailing 0
+    private static int profileLength(int distance) {
+        return ProfileTable.length(distance);
     }
 
-    private static String[] generateSequentialPath(int goalX, int goalY, boolean xFirst) {
-        List<Integer> xPaces = generatePaceSequence(goalX);
-        List<Integer> yPaces = generatePaceSequence(goalY);
+    // Ticks taken by the profile of the distance, including both zeros
+    private static int profileTime(int distance) {
+        return (int) profiles.time(distance);
+    }
 
-        if (xFirst) {
-            // Do X movement first, then Y
-            List<Integer> paddedY = new ArrayList<>();
-            paddedY.add(0);
-            for (int i = 1; i < xPaces.size(); i++) {
-                paddedY.add(0);
+    // Every pace element lasts max(1, |pace|) ticks and moves the ship one cell when it ends
+    private static final int MAX_PACE = 5;
+    private static final int PACE_STATES = 2 * MAX_PACE + 1;
+    private static final int SEARCH_RANGE = 512;
+    private static final int AXIS_STATES = (2 * SEARCH_RANGE + 1) * PACE_STATES * MAX_PACE;
+    private static final int SEARCH_NODE_LIMIT = 250_000;
+    private static final int NO_PACE = Integer.MIN_VALUE;
+    private static final int[][] UNREACHABLE = new int[0][];
+
+    // Margins beyond the first free cell around the asteroid tried for detour waypoints
+    private static final int[] BOX_MARGINS = {0, 1, 3, 6};
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private static final int[][] NEXT_PACES = buildNextPaces();
+
+    // Minimum ticks for one axis to come to rest at its target, ignoring the asteroid
+    private static final int[] AXIS_TIMES = buildAxisTimes();
+
+    private static class SearchNode {
+        long state;
+        int time;
+        int bound;
+        int xPace;
+        int yPace;
+        SearchNode parent;
+
+        SearchNode(long state, int time, int bound, int xPace, int yPace, SearchNode parent) {
+            this.state = state;
+            this.time = time;
+            this.bound = bound;
+            this.xPace = xPace;
+            this.yPace = yPace;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * A* over (x, y, paceX, paceY) plus the ticks left in each axis's current pace, advancing one tick
+     * per edge with the same X-then-Y collision checks as isSafe. The heuristic is the larger of the two
+     * unobstructed 1D times, so the first goal popped is a minimum-time path. Returns UNREACHABLE when no
+     * safe path fits the time limit and null when the node budget or the deadline runs out.
+     */
+    private static int[][] searchPath(int goalX, int goalY, int asteroidX, int asteroidY, int timeLimit,
+                                      CaseBudget.Deadline deadline) {
+        if (Math.abs(goalX) > SEARCH_RANGE / 2 || Math.abs(goalY) > SEARCH_RANGE / 2) {
+            return null;
+        }
+        if (isInBox(0, 0, asteroidX, asteroidY) || isInBox(goalX, goalY, asteroidX, asteroidY)) {
+            return UNREACHABLE;
+        }
+
+        PriorityQueue<SearchNode> open = new PriorityQueue<>((a, b) -> {
+            if (a.bound != b.bound) return Integer.compare(a.bound, b.bound);
+            return Integer.compare(b.time, a.time);
+        });
+        Map<Long, Integer> bestTimes = new HashMap<>();
+
+        // The leading 0 of both sequences takes the first tick
+        long start = packState(goalX, 0, 0, goalY, 0, 0);
+        open.add(new SearchNode(start, 1, 1 + estimate(start), NO_PACE, NO_PACE, null));
+        bestTimes.put(start, 1);
+
+        int[] xMoves = new int[12];
+        int[] yMoves = new int[12];
+        int expanded = 0;
+
+        while (!open.isEmpty()) {
+            SearchNode node = open.poll();
+            if (bestTimes.get(node.state) < node.time) {
+                continue;
             }
-            for (int i = 1; i < yPaces.size(); i++) {
-                paddedY.add(yPaces.get(i));
+            if (node.bound == node.time) {
+                return buildSearchResult(node);
             }
-            return new String[]{toSeqString(xPaces), toSeqString(paddedY)};
-        } else {
-            // Do Y movement first, then X
-            List<Integer> paddedX = new ArrayList<>();
-            paddedX.add(0);
-            for (int i = 1; i < yPaces.size(); i++) {
-                paddedX.add(0);
+            if (++expanded > SEARCH_NODE_LIMIT) {
+                return null;
             }
-            for (int i = 1; i < xPaces.size(); i++) {
-                paddedX.add(xPaces.get(i));
+            if (expanded % CaseBudget.CHECK_INTERVAL == 0 && deadline.expired()) {
+                return null;
+            }
+
+            int xState = (int) (node.state / AXIS_STATES);
+            int yState = (int) (node.state % AXIS_STATES);
+            int xCount = axisMoves(xState, xMoves);
+            int yCount = axisMoves(yState, yMoves);
+            int x = goalX - axisDistance(xState);
+            int y = goalY - axisDistance(yState);
+
+            for (int i = 0; i < xCount; i += 2) {
+                int nextX = goalX - axisDistance(xMoves[i]);
+                if (nextX != x && isInBox(nextX, y, asteroidX, asteroidY)) {
+                    continue;
+                }
+
+                for (int j = 0; j < yCount; j += 2) {
+                    int nextY = goalY - axisDistance(yMoves[j]);
+                    if (nextY != y && isInBox(nextX, nextY, asteroidX, asteroidY)) {
+                        continue;
+                    }
+
+                    long next = (long) xMoves[i] * AXIS_STATES + yMoves[j];
+                    int time = node.time + 1;
+                    int bound = time + estimate(next);
+                    if (bound > timeLimit) {
+                        continue;
+                    }
+
+                    Integer known = bestTimes.get(next);
+                    if (known != null && known <= time) {
+                        continue;
+                    }
+                    bestTimes.put(next, time);
+                    open.add(new SearchNode(next, time, bound, xMoves[i + 1], yMoves[j + 1], node));
+                }
             }
-            return new String[]{toSeqString(paddedX), toSeqString(yPaces)};
         }
-    }
 
-    private static String[] generateUShapedPath(int goalX, int goalY, int detourX, int detourY) {
-        List<Integer> xPaces = new ArrayList<>();
-        List<Integer> yPaces = new ArrayList<>();
+        return UNREACHABLE;
+    }
 
-        xPaces.add(0);
-        yPaces.add(0);
+    private static boolean isInBox(int x, int y, int asteroidX, int asteroidY) {
+        return Math.abs(x - asteroidX) <= 2 && Math.abs(y - asteroidY) <= 2;
+    }
 
-        // First leg: go to detour point
-        List<Integer> dx = generatePaceSequence(detourX);
-        List<Integer> dy = generatePaceSequence(detourY);
-        addSegment(xPaces, yPaces, dx, dy);
+    private static int[][] buildSearchResult(SearchNode goal) {
+        int xCount = 1, yCount = 1;
+        for (SearchNode node = goal; node.parent != null; node = node.parent) {
+            if (node.xPace != NO_PACE) xCount++;
+            if (node.yPace != NO_PACE) yCount++;
+        }
 
-        // Second leg: go from detour to goal
-        List<Integer> gx = generatePaceSequence(goalX - detourX);
-        List<Integer> gy = generatePaceSequence(goalY - detourY);
-        addSegment(xPaces, yPaces, gx, gy);
+        int[] xPaces = new int[xCount];
+        int[] yPaces = new int[yCount];
+        for (SearchNode node = goal; node.parent != null; node = node.parent) {
+            if (node.xPace != NO_PACE) xPaces[--xCount] = node.xPace;
+            if (node.yPace != NO_PACE) yPaces[--yCount] = node.yPace;
+        }
 
-        return new String[]{toSeqString(xPaces), toSeqString(yPaces)};
+        return new int[][]{trimTrailingRest(xPaces), trimTrailingRest(yPaces)};
     }
 
-    private static String[] generateDetourPath(int goalX, int goalY, int waypointX, int waypointY) {
-        List<Integer> xPaces = new ArrayList<>();
-        List<Integer> yPaces = new ArrayList<>();
+    // An axis that arrives early idles on zeros; keep a single closing 0 (and at least "0 0")
+    private static int[] trimTrailingRest(int[] paces) {
+        int length = paces.length;
+        while (length > 2 && paces[length - 1] == 0 && paces[length - 2] == 0) {
+            length--;
+        }
+        return Arrays.copyOf(paces, Math.max(2, length));
+    }
 
-        xPaces.add(0);
-        yPaces.add(0);
+    private static long packState(int goalX, int x, int xPace, int goalY, int y, int yPace) {
+        return (long) packAxis(goalX - x, xPace, 0) * AXIS_STATES + packAxis(goalY - y, yPace, 0);
+    }
 
-        // First segment: origin to waypoint
-        List<Integer> wx = generatePaceSequence(waypointX);
-        List<Integer> wy = generatePaceSequence(waypointY);
-        addSegment(xPaces, yPaces, wx, wy);
+    private static int estimate(long state) {
+        int xTime = AXIS_TIMES[(int) (state / AXIS_STATES)];
+        int yTime = AXIS_TIMES[(int) (state % AXIS_STATES)];
+        return Math.max(xTime, yTime);
+    }
 
-        // Second segment: waypoint to goal
-        int remainingX = goalX - waypointX;
-        int remainingY = goalY - waypointY;
-        List<Integer> rx = generatePaceSequence(remainingX);
-        List<Integer> ry = generatePaceSequence(remainingY);
-        addSegment(xPaces, yPaces, rx, ry);
+    // Axis state: distance left to the target, current pace and the ticks that pace still has to run
+    private static int packAxis(int distance, int pace, int ticksLeft) {
+        return ((distance + SEARCH_RANGE) * PACE_STATES + pace + MAX_PACE) * MAX_PACE + ticksLeft;
+    }
 
-        return new String[]{toSeqString(xPaces), toSeqString(yPaces)};
+    private static int axisDistance(int axisState) {
+        return axisState / (PACE_STATES * MAX_PACE) - SEARCH_RANGE;
     }
 
-    private static List<Integer> generatePaceSequence(int distance) {
-        List<Integer> paces = new ArrayList<>();
-        paces.add(0);
+    private static int axisPace(int axisState) {
+        return axisState / MAX_PACE % PACE_STATES - MAX_PACE;
+    }
 
-        if (distance == 0) {
-            paces.add(0);
-            return paces;
+    /**
+     * Fills moves with (next axis state, chosen pace) pairs for one tick and returns the number of ints
+     * written. The chosen pace is NO_PACE while the current pace is still running.
+     */
+    private static int axisMoves(int axisState, int[] moves) {
+        int distance = axisDistance(axisState);
+        int pace = axisPace(axisState);
+        int ticksLeft = axisState % MAX_PACE;
+
+        if (ticksLeft > 0) {
+            int nextDistance = (ticksLeft == 1) ? distance - Integer.signum(pace) : distance;
+            if (Math.abs(nextDistance) > SEARCH_RANGE) {
+                return 0;
+            }
+            moves[0] = packAxis(nextDistance, pace, ticksLeft - 1);
+            moves[1] = NO_PACE;
+            return 2;
         }
 
-        int absDistance = Math.abs(distance);
-        int direction = distance > 0 ? 1 : -1;
-
-        // For very short distances
-        if (absDistance <= 2) {
-            for (int i = 0; i < absDistance; i++) {
-                paces.add(5 * direction);
+        int count = 0;
+        for (int next : NEXT_PACES[pace + MAX_PACE]) {
+            int nextTicksLeft = Math.max(1, Math.abs(next)) - 1;
+            int nextDistance = (nextTicksLeft == 0) ? distance - Integer.signum(next) : distance;
+            if (Math.abs(nextDistance) > SEARCH_RANGE) {
+                continue;
             }
-            paces.add(0);
-            return paces;
+            moves[count++] = packAxis(nextDistance, next, nextTicksLeft);
+            moves[count++] = next;
+        }
+        return count;
+    }
+
+    // Paces may follow each other as in the 1D profiles: 0 <-> +-5, then one step at a time down to +-1
+    private static int[][] buildNextPaces() {
+        int[][] next = new int[PACE_STATES][];
+        for (int pace = -MAX_PACE; pace <= MAX_PACE; pace++) {
+            next[pace + MAX_PACE] = nextPaces(pace);
         }
+        return next;
+    }
 
-        // Calculate optimal min pace for this distance
-        // We want: accel_moves + cruise_moves + decel_moves = distance
-        // accel_moves = (5 - minPace + 1), decel_moves = (5 - minPace)
-        int minPace = (int) Math.ceil((11.0 - absDistance) / 2.0);
-        if (minPace < 1) minPace = 1;
-        if (minPace > 5) minPace = 5;
+    private static int[] nextPaces(int pace) {
+        if (pace == 0) return new int[]{0, MAX_PACE, -MAX_PACE};
 
-        int accelMoves = 5 - minPace + 1;  // How many moves during acceleration
-        int decelMoves = 5 - minPace;       // How many moves during deceleration
-        int cruiseMoves = absDistance - accelMoves - decelMoves;
+        int direction = Integer.signum(pace);
+        int speed = Math.abs(pace);
+        if (speed == MAX_PACE) return new int[]{pace, pace - direction, 0};
+        if (speed == 1) return new int[]{pace, pace + direction};
+        return new int[]{pace, pace - direction, pace + direction};
+    }
 
-        // Acceleration phase: 5, 4, 3, ... down to minPace
-        for (int pace = 5; pace >= minPace; pace--) {
-            paces.add(pace * direction);
+    /**
+     * Backward BFS from "at rest on the target" over every single-axis state within SEARCH_RANGE.
+     */
+    private static int[] buildAxisTimes() {
+        int size = AXIS_STATES;
+        int[] times = new int[size];
+        Arrays.fill(times, Integer.MAX_VALUE / 2);
+
+        List<List<Integer>> predecessors = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            predecessors.add(null);
         }
 
-        // Cruise phase: maintain minPace
-        for (int i = 0; i < cruiseMoves; i++) {
-            paces.add(minPace * direction);
+        int[] moves = new int[12];
+        for (int state = 0; state < size; state++) {
+            int ticksLeft = state % MAX_PACE;
+            int pace = axisPace(state);
+            if (ticksLeft >= Math.max(1, Math.abs(pace))) {
+                continue;
+            }
+            int count = axisMoves(state, moves);
+            for (int i = 0; i < count; i += 2) {
+                if (predecessors.get(moves[i]) == null) {
+                    predecessors.set(moves[i], new ArrayList<>(3));
+                }
+                predecessors.get(moves[i]).add(state);
+            }
         }
 
-        // Deceleration phase: minPace+1, minPace+2, ... up to 5
-        for (int pace = minPace + 1; pace <= 5; pace++) {
-            paces.add(pace * direction);
+        int[] queue = new int[size];
+        int head = 0, tail = 0;
+        int target = packAxis(0, 0, 0);
+        times[target] = 0;
+        queue[tail++] = target;
+
+        while (head < tail) {
+            int state = queue[head++];
+            List<Integer> previous = predecessors.get(state);
+            if (previous == null) continue;
+            for (int prev : previous) {
+                if (times[prev] > times[state] + 1) {
+                    times[prev] = times[state] + 1;
+                    queue[tail++] = prev;
+                }
+            }
         }
 
-        paces.add(0);
-        return paces;
+        return times;
     }
 
-    private static void addSegment(List<Integer> xPaces, List<Integer> yPaces,
-                                    List<Integer> xSeg, List<Integer> ySeg) {
+    private static void generateOptimalPath(Workspace ws, int goalX, int goalY) {
+        ws.xPaces.clear();
+        ws.yPaces.clear();
+        ws.xPaces.append(profiles.profile(goalX), 0);
+        ws.yPaces.append(profiles.profile(goalY), 0);
+        padToSameLength(ws.xPaces, ws.yPaces);
+    }
+
+    private static void generateSequentialPath(Workspace ws, int goalX, int goalY, boolean xFirst) {
+        // One axis moves while the other waits at 0, then the other moves
+        PaceBuffer first = xFirst ? ws.xPaces : ws.yPaces;
+        PaceBuffer second = xFirst ? ws.yPaces : ws.xPaces;
+        first.clear();
+        first.append(profiles.profile(xFirst ? goalX : goalY), 0);
+        second.clear();
+        for (int i = 0; i < first.size(); i++) {
+            second.add(0);
+        }
+        second.append(profiles.profile(xFirst ? goalY : goalX), 1);
+    }
+
+    private static void generateDetourPath(Workspace ws, int goalX, int goalY, int waypointX, int waypointY) {
+        ws.xPaces.clear();
+        ws.yPaces.clear();
+
+        ws.xPaces.add(0);
+        ws.yPaces.add(0);
+
+        // First segment: origin to waypoint
+        addSegment(ws.xPaces, ws.yPaces, profiles.profile(waypointX), profiles.profile(waypointY));
+
+        // Second segment: waypoint to goal
+        int remainingX = goalX - waypointX;
+        int remainingY = goalY - waypointY;
+        addSegment(ws.xPaces, ws.yPaces, profiles.profile(remainingX), profiles.profile(remainingY));
+    }
+
+    private static void addSegment(PaceBuffer xPaces, PaceBuffer yPaces, ProfileTable.Profile xSeg,
+                                   ProfileTable.Profile ySeg) {
         // Skip the first 0 from segment (already have it)
-        for (int i = 1; i < xSeg.size(); i++) xPaces.add(xSeg.get(i));
-        for (int i = 1; i < ySeg.size(); i++) yPaces.add(ySeg.get(i));
+        xPaces.append(xSeg, 1);
+        yPaces.append(ySeg, 1);
 
         // Pad to equal length
-        while (xPaces.size() < yPaces.size()) xPaces.add(0);
-        while (yPaces.size() < xPaces.size()) yPaces.add(0);
+        padToSameLength(xPaces, yPaces);
     }
 
-    private static String[] padAndFormat(List<Integer> xPaces, List<Integer> yPaces) {
+    private static void padToSameLength(PaceBuffer xPaces, PaceBuffer yPaces) {
         while (xPaces.size() < yPaces.size()) xPaces.add(0);
         while (yPaces.size() < xPaces.size()) yPaces.add(0);
-        return new String[]{toSeqString(xPaces), toSeqString(yPaces)};
     }
 
-    private static boolean isSafe(String xSeq, String ySeq, int asteroidX, int asteroidY,
-                                   int goalX, int goalY, int timeLimit) {
-        List<Integer> xPaces = parseSeq(xSeq);
-        List<Integer> yPaces = parseSeq(ySeq);
+    private static boolean isSafe(Workspace ws, int asteroidX, int asteroidY, int goalX, int goalY,
+                                  int timeLimit) {
+        PaceBuffer xPaces = ws.xPaces;
+        PaceBuffer yPaces = ws.yPaces;
 
         // Calculate total time
         int totalTime = calculateTotalTime(xPaces, yPaces);
@@ -301,73 +855,68 @@ public class Level6 {
             return false;
         }
 
-        // Pad sequences to same length
-        while (xPaces.size() < yPaces.size()) xPaces.add(0);
-        while (yPaces.size() < xPaces.size()) yPaces.add(0);
-
-        // Expand paces - each pace of value V lasts for abs(V) ticks (or 1 tick if V=0)
-        List<Integer> expandedX = new ArrayList<>();
-        List<Integer> expandedY = new ArrayList<>();
-
-        for (int pace : xPaces) {
-            int repeats = (pace == 0) ? 1 : Math.abs(pace);
-            for (int i = 0; i < repeats; i++) {
-                expandedX.add(pace);
-            }
+        // Check initial position
+        if (isInBox(0, 0, asteroidX, asteroidY)) {
+            return false;
         }
 
-        for (int pace : yPaces) {
-            int repeats = (pace == 0) ? 1 : Math.abs(pace);
-            for (int i = 0; i < repeats; i++) {
-                expandedY.add(pace);
-            }
+        // Resume from the last checkpoint of the previous candidate heading off in the same direction
+        // whose upcoming paces this one shares; if that candidate collided right there, so does this one
+        SimulationTrace trace = ws.traceFor(xPaces, yPaces);
+        int sharedX = sharedPrefix(xPaces, trace.xPaces);
+        int sharedY = sharedPrefix(yPaces, trace.yPaces);
+        int resume = trace.lastShared(sharedX, sharedY);
+        if (resume >= 0 && resume == trace.collision) {
+            return false;
         }
+        trace.xPaces.copyFrom(xPaces, Math.min(sharedX, xPaces.size()));
+        trace.yPaces.copyFrom(yPaces, Math.min(sharedY, yPaces.size()));
+        trace.collision = -1;
 
-        // Pad expanded sequences
-        while (expandedX.size() < expandedY.size()) expandedX.add(0);
-        while (expandedY.size() < expandedX.size()) expandedY.add(0);
-
-        // Simulate with tick-based movement
         int x = 0, y = 0;
-        int tickX = 0, tickY = 0;
-
-        // Check initial position
-        if (Math.abs(x - asteroidX) <= 2 && Math.abs(y - asteroidY) <= 2) {
-            return false;
+        int xIndex = 0, yIndex = 0;
+        int xClock = 0, yClock = 0;
+        if (resume >= 0) {
+            int[] saved = trace.checkpoints;
+            int at = resume * SimulationTrace.FIELDS;
+            xIndex = saved[at];
+            yIndex = saved[at + 1];
+            xClock = saved[at + 2];
+            yClock = saved[at + 3];
+            x = saved[at + 4];
+            y = saved[at + 5];
         }
+        trace.count = Math.max(resume, 0);
 
-        for (int step = 0; step < expandedX.size(); step++) {
-            int vx = expandedX.get(step);
-            int vy = expandedY.get(step);
+        // Positions only change when a pace element ends, so jump from one axis move to the next instead
+        // of stepping through every tick. Within a tick X moves (and is checked) before Y.
+        while (true) {
+            while (xIndex < xPaces.size() && !movesAxis(xPaces.get(xIndex))) {
+                xClock += paceTicks(xPaces, xIndex++);
+            }
+            while (yIndex < yPaces.size() && !movesAxis(yPaces.get(yIndex))) {
+                yClock += paceTicks(yPaces, yIndex++);
+            }
+            trace.record(xIndex, yIndex, xClock, yClock, x, y);
+            if (xIndex == xPaces.size() && yIndex == yPaces.size()) {
+                break;
+            }
 
-            // Process X movement
-            if (vx != 0 && Math.abs(vx) >= 1 && Math.abs(vx) <= 5) {
-                tickX++;
-                if (tickX >= Math.abs(vx)) {
-                    tickX = 0;
-                    x += (vx > 0) ? 1 : -1;
-                    // Check collision after movement
-                    if (Math.abs(x - asteroidX) <= 2 && Math.abs(y - asteroidY) <= 2) {
-                        return false;
-                    }
-                }
-            } else {
-                tickX = 0;
-            }
-
-            // Process Y movement
-            if (vy != 0 && Math.abs(vy) >= 1 && Math.abs(vy) <= 5) {
-                tickY++;
-                if (tickY >= Math.abs(vy)) {
-                    tickY = 0;
-                    y += (vy > 0) ? 1 : -1;
-                    // Check collision after movement
-                    if (Math.abs(x - asteroidX) <= 2 && Math.abs(y - asteroidY) <= 2) {
-                        return false;
-                    }
-                }
+            int xMoveAt = (xIndex < xPaces.size()) ? xClock + paceTicks(xPaces, xIndex) : Integer.MAX_VALUE;
+            int yMoveAt = (yIndex < yPaces.size()) ? yClock + paceTicks(yPaces, yIndex) : Integer.MAX_VALUE;
+
+            if (xMoveAt <= yMoveAt) {
+                x += (xPaces.get(xIndex++) > 0) ? 1 : -1;
+                xClock = xMoveAt;
             } else {
-                tickY = 0;
+                y += (yPaces.get(yIndex++) > 0) ? 1 : -1;
+                yClock = yMoveAt;
+            }
+
+            // Check collision after movement
+            if (isInBox(x, y, asteroidX, asteroidY)) {
+                trace.collision = trace.count - 1;
+                return false;
             }
         }
 
@@ -375,50 +924,234 @@ public class Level6 {
         return x == goalX && y == goalY;
     }
 
-    private static int calculateTotalTime(List<Integer> xPaces, List<Integer> yPaces) {
-        int maxSize = Math.max(xPaces.size(), yPaces.size());
-        int totalTime = 0;
-
-        for (int i = 0; i < maxSize; i++) {
-            int vx = (i < xPaces.size()) ? xPaces.get(i) : 0;
-            int vy = (i < yPaces.size()) ? yPaces.get(i) : 0;
+    /**
+     * Length of the common prefix of two pace buffers, plus one when they are identical so that a
+     * checkpoint sitting at the very end still counts as shared.
+     */
+    private static int sharedPrefix(PaceBuffer a, PaceBuffer b) {
+        int length = Math.min(a.size(), b.size());
+        for (int i = 0; i < length; i++) {
+            if (a.get(i) != b.get(i)) {
+                return i;
+            }
+        }
+        return (a.size() == b.size()) ? length + 1 : length;
+    }
 
-            int xTime = (vx == 0) ? 1 : Math.abs(vx);
-            int yTime = (vy == 0) ? 1 : Math.abs(vy);
+    // Paces outside 1..5 never complete a move, matching the tick simulation in the visualizer
+    private static boolean movesAxis(int pace) {
+        return pace != 0 && Math.abs(pace) <= 5;
+    }
 
-            totalTime += Math.max(xTime, yTime);
+    private static int paceTicks(PaceBuffer paces, int index) {
+        if (index >= paces.size()) {
+            return 0;
         }
-
-        return totalTime;
+        int pace = paces.get(index);
+        return (pace == 0) ? 1 : Math.abs(pace);
     }
 
-    private static List<Integer> parseSeq(String seq) {
-        List<Integer> result = new ArrayList<>();
-        if (seq == null || seq.trim().isEmpty()) {
-            return result;
+    private static int calculateTotalTime(PaceBuffer xPaces, PaceBuffer yPaces) {
+        // Both axes run on their own clock, so the path takes as long as the slower axis
+        int xTime = 0;
+        for (int i = 0; i < xPaces.size(); i++) {
+            xTime += paceTicks(xPaces, i);
         }
-        String[] parts = seq.trim().split("\\s+");
-        for (String part : parts) {
-            result.add(Integer.parseInt(part));
+
+        int yTime = 0;
+        for (int i = 0; i < yPaces.size(); i++) {
+            yTime += paceTicks(yPaces, i);
         }
-        return result;
+
+        return Math.max(xTime, yTime);
     }
 
-    private static String toSeqString(List<Integer> seq) {
+    private static String toSeqString(int[] seq) {
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < seq.size(); i++) {
+        for (int i = 0; i < seq.length; i++) {
             if (i > 0) sb.append(" ");
-            sb.append(seq.get(i));
+            sb.append(seq[i]);
         }
         return sb.toString();
     }
 
-    private static void writeResults(String outputFile, List<String> results) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            for (String result : results) {
-                writer.write(result);
-                writer.newLine();
+    // Inverse of the two toSeqString lines stored in the solution cache
+    private static int[][] parsePath(String lines) {
+        String[] sequences = lines.split("\n");
+        int[][] path = new int[2][];
+        for (int axis = 0; axis < 2; axis++) {
+            String[] parts = sequences[axis].trim().split("\\s+");
+            path[axis] = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                path[axis][i] = Integer.parseInt(parts[i]);
+            }
+        }
+        return path;
+    }
+
+    // Cases are separated by a blank line
+    private static void writeResult(OutputEncoder writer, int index, int[][] path) throws IOException {
+        if (index > 0) {
+            writer.newLine();
+        }
+        writer.writePaces(path[0]);
+        writer.newLine();
+        writer.writePaces(path[1]);
+        writer.newLine();
+    }
+
+    /**
+     * Growable int[] holding one axis's paces, so candidates never box or round-trip through Strings.
+     */
+    private static final class PaceBuffer {
+        private int[] paces = new int[64];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(int pace) {
+            if (size == paces.length) {
+                paces = Arrays.copyOf(paces, size * 2);
+            }
+            paces[size++] = pace;
+        }
+
+        int get(int index) {
+            return paces[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(paces, size);
+        }
+
+        // Adds the profile's paces from index from on
+        void append(ProfileTable.Profile profile, int from) {
+            int count = profile.size() - from;
+            if (size + count > paces.length) {
+                paces = Arrays.copyOf(paces, Math.max(size + count, size * 2));
+            }
+            profile.copyTo(from, paces, size);
+            size += count;
+        }
+
+        // Makes this a copy of other, given that the first `from` paces already match
+        void copyFrom(PaceBuffer other, int from) {
+            if (paces.length < other.size) {
+                paces = Arrays.copyOf(paces, other.paces.length);
+            }
+            System.arraycopy(other.paces, from, paces, from, other.size - from);
+            size = other.size;
+        }
+    }
+
+    /**
+     * Event-loop state of the last candidate isSafe simulated for the current case, recorded each time
+     * the loop is about to pick its next move. A checkpoint only depends on the paces before its two
+     * indices and the ones at them, so any candidate sharing those can resume from it.
+     */
+    private static final class SimulationTrace {
+        static final int FIELDS = 6;
+
+        final PaceBuffer xPaces = new PaceBuffer();
+        final PaceBuffer yPaces = new PaceBuffer();
+        int[] checkpoints = new int[FIELDS * 64];
+        int count;
+        int collision = -1;
+
+        void reset() {
+            xPaces.clear();
+            yPaces.clear();
+            count = 0;
+            collision = -1;
+        }
+
+        void record(int xIndex, int yIndex, int xClock, int yClock, int x, int y) {
+            int at = count * FIELDS;
+            if (at == checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, at * 2);
             }
+            checkpoints[at] = xIndex;
+            checkpoints[at + 1] = yIndex;
+            checkpoints[at + 2] = xClock;
+            checkpoints[at + 3] = yClock;
+            checkpoints[at + 4] = x;
+            checkpoints[at + 5] = y;
+            count++;
+        }
+
+        // Both indices only grow along the trace, so the usable checkpoints form a prefix of it
+        int lastShared(int sharedX, int sharedY) {
+            int low = 0, high = count - 1, found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int at = mid * FIELDS;
+                if (checkpoints[at] < sharedX && checkpoints[at + 1] < sharedY) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+    }
+
+    // Candidate and segment buffers reused for every candidate a thread builds
+    private static final class Workspace {
+        final PaceBuffer xPaces = new PaceBuffer();
+        final PaceBuffer yPaces = new PaceBuffer();
+        final SimulationTrace[] traces = new SimulationTrace[9];
+        final int[] strategyOrder = new int[StrategyRegistry.STRATEGIES];
+        int candidatesChecked;
+
+        int[] waypointX = new int[128];
+        int[] waypointY = new int[128];
+        long[] ranking = new long[128];
+        int waypointCount;
+
+        void clearWaypoints() {
+            waypointCount = 0;
+        }
+
+        void addWaypoint(int x, int y) {
+            if (waypointCount == waypointX.length) {
+                waypointX = Arrays.copyOf(waypointX, waypointCount * 2);
+                waypointY = Arrays.copyOf(waypointY, waypointCount * 2);
+                ranking = Arrays.copyOf(ranking, waypointCount * 2);
+            }
+            waypointX[waypointCount] = x;
+            waypointY[waypointCount] = y;
+            waypointCount++;
+        }
+
+        Workspace() {
+            for (int i = 0; i < traces.length; i++) {
+                traces[i] = new SimulationTrace();
+            }
+        }
+
+        // Candidates share prefixes only with those whose first paces point the same way
+        SimulationTrace traceFor(PaceBuffer xPaces, PaceBuffer yPaces) {
+            int xDirection = Integer.signum(xPaces.get(1));
+            int yDirection = Integer.signum(yPaces.get(1));
+            return traces[(xDirection + 1) * 3 + yDirection + 1];
+        }
+
+        int[][] toPath() {
+            return new int[][]{xPaces.toArray(), yPaces.toArray()};
+        }
+
+        void loadPath(int[][] path) {
+            xPaces.clear();
+            yPaces.clear();
+            for (int pace : path[0]) xPaces.add(pace);
+            for (int pace : path[1]) yPaces.add(pace);
         }
     }
 }
@@ -0,0 +1,214 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Precomputed Level6 answers for a bounded domain, read through a memory-mapped file. The domain is
+ * every case whose mirror-canonical form (see PathCache) has 0 <= goal <= range on both axes and
+ * the asteroid inside the rectangle spanned by the start and the goal.
+ *
+ * A minimum-time path does not depend on the time limit, so each case stores one path and its time;
+ * a lookup answers with the path when it fits the limit. Cases sharing the unobstructed path of
+ * their goal share one stored copy.
+ *
+ * Layout (big-endian): magic, range, cell count, path count; one int per cell (a path id or one of
+ * the NO_PATH / UNSOLVED markers), cells ordered by goal x, goal y, asteroid x, asteroid y; one int
+ * offset per path into the pool; the pool, where a path is an int (time << 1 | exact), the two
+ * sequence lengths as shorts and then the paces as bytes.
+ */
+final class Level6Table {
+
+    static final int MAGIC = 0x4c365442;
+    static final int NO_PATH = -1;
+    static final int UNSOLVED = -2;
+
+    private static final int HEADER_BYTES = 16;
+
+    private final MappedByteBuffer buffer;
+    private final int range;
+    private final int[] goalBase;
+    private final int offsetsStart;
+    private final int poolStart;
+
+    private Level6Table(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a Level6 answer table");
+        }
+        this.range = buffer.getInt(4);
+        int cellCount = buffer.getInt(8);
+        int pathCount = buffer.getInt(12);
+        this.goalBase = goalBase(range);
+        if (goalBase[goalBase.length - 1] != cellCount) {
+            throw new IOException("Answer table has " + cellCount + " cells, expected "
+                    + goalBase[goalBase.length - 1] + " for range " + range);
+        }
+        this.offsetsStart = HEADER_BYTES + 4 * cellCount;
+        this.poolStart = offsetsStart + 4 * pathCount;
+    }
+
+    static Level6Table open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Level6Table(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * First cell of each canonical goal, indexed by goalX * (range + 1) + goalY, with the total cell
+     * count appended.
+     */
+    static int[] goalBase(int range) {
+        int side = range + 1;
+        int[] base = new int[side * side + 1];
+        long next = 0;
+        for (int goalX = 0; goalX <= range; goalX++) {
+            for (int goalY = 0; goalY <= range; goalY++) {
+                base[goalX * side + goalY] = (int) next;
+                next += (long) (goalX + 1) * (goalY + 1);
+            }
+        }
+        if (next > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("Table range " + range + " is too large");
+        }
+        base[side * side] = (int) next;
+        return base;
+    }
+
+    /**
+     * Stored answer for the case: the path if it fits the limit, Level6's UNREACHABLE marker (passed
+     * in as unreachable) when the exact minimum time does not, or null when the case has to be solved
+     * live.
+     */
+    int[][] lookup(int goalX, int goalY, int asteroidX, int asteroidY, int timeLimit, int[][] unreachable) {
+        boolean flipX = goalX < 0 || (goalX == 0 && asteroidX < 0);
+        boolean flipY = goalY < 0 || (goalY == 0 && asteroidY < 0);
+        if (flipX) {
+            goalX = -goalX;
+            asteroidX = -asteroidX;
+        }
+        if (flipY) {
+            goalY = -goalY;
+            asteroidY = -asteroidY;
+        }
+        if (goalX > range || goalY > range || asteroidX < 0 || asteroidX > goalX
+                || asteroidY < 0 || asteroidY > goalY) {
+            return null;
+        }
+
+        int cell = goalBase[goalX * (range + 1) + goalY] + asteroidX * (goalY + 1) + asteroidY;
+        int id = buffer.getInt(HEADER_BYTES + 4 * cell);
+        if (id == NO_PATH) {
+            return unreachable;
+        }
+        if (id == UNSOLVED) {
+            return null;
+        }
+
+        int at = poolStart + buffer.getInt(offsetsStart + 4 * id);
+        int timeAndExact = buffer.getInt(at);
+        if ((timeAndExact >>> 1) > timeLimit) {
+            return ((timeAndExact & 1) != 0) ? unreachable : null;
+        }
+
+        int xLength = buffer.getShort(at + 4);
+        int yLength = buffer.getShort(at + 6);
+        int[] xPaces = new int[xLength];
+        int[] yPaces = new int[yLength];
+        at += 8;
+        for (int i = 0; i < xLength; i++) {
+            int pace = buffer.get(at++);
+            xPaces[i] = flipX ? -pace : pace;
+        }
+        for (int i = 0; i < yLength; i++) {
+            int pace = buffer.get(at++);
+            yPaces[i] = flipY ? -pace : pace;
+        }
+        return new int[][]{xPaces, yPaces};
+    }
+
+    /**
+     * Writes a table: cells are filled in any order, paths are streamed to a temporary pool file and
+     * everything is assembled on finish.
+     */
+    static final class Builder implements Closeable {
+        private final Path file;
+        private final Path poolFile;
+        private final DataOutputStream pool;
+        private final int range;
+        private final int[] goalBase;
+        private final int[] cells;
+        private int[] offsets = new int[1024];
+        private int pathCount;
+        private int poolSize;
+
+        Builder(Path file, int range) throws IOException {
+            this.file = file;
+            this.range = range;
+            this.goalBase = goalBase(range);
+            this.cells = new int[goalBase[goalBase.length - 1]];
+            Arrays.fill(cells, UNSOLVED);
+            this.poolFile = Files.createTempFile(file.toAbsolutePath().getParent(), "level6-pool", ".tmp");
+            this.pool = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(poolFile)));
+        }
+
+        // First cell of a canonical goal; its asteroids follow in x-major order
+        int goalCell(int goalX, int goalY) {
+            return goalBase[goalX * (range + 1) + goalY];
+        }
+
+        void setCell(int cell, int id) {
+            cells[cell] = id;
+        }
+
+        int addPath(int[][] path, int time, boolean exact) throws IOException {
+            if (pathCount == offsets.length) {
+                offsets = Arrays.copyOf(offsets, pathCount * 2);
+            }
+            offsets[pathCount] = poolSize;
+
+            pool.writeInt(time << 1 | (exact ? 1 : 0));
+            pool.writeShort(path[0].length);
+            pool.writeShort(path[1].length);
+            for (int[] paces : path) {
+                for (int pace : paces) {
+                    pool.writeByte(pace);
+                }
+            }
+            poolSize += 8 + path[0].length + path[1].length;
+            if (poolSize < 0) {
+                throw new IOException("Answer table pool exceeds 2 GB");
+            }
+            return pathCount++;
+        }
+
+        void finish() throws IOException {
+            pool.close();
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 FileChannel in = FileChannel.open(poolFile, StandardOpenOption.READ)) {
+                ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES + 4 * (cells.length + pathCount));
+                head.putInt(MAGIC).putInt(range).putInt(cells.length).putInt(pathCount);
+                head.asIntBuffer().put(cells).put(offsets, 0, pathCount);
+                head.rewind();
+                while (head.hasRemaining()) {
+                    out.write(head);
+                }
+
+                long position = 0;
+                while (position < poolSize) {
+                    position += in.transferTo(position, poolSize - position, out);
+                }
+            }
+            Files.deleteIfExists(poolFile);
+        }
+
+        @Override
+        public void close() throws IOException {
+            pool.close();
+            Files.deleteIfExists(poolFile);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import java.io.*;
+import java.util.regex.*;
+
+/**
+ * Dispatches to the solver of a level by number, for the entry points that serve every level.
+ */
+final class Levels {
+
+    static final int COUNT = 6;
+
+    private static final Pattern LEVEL_NAME = Pattern.compile("level(\\d+)_.*");
+
+    private Levels() {
+    }
+
+    /** Level named at the start of an input file name (levelN_...). */
+    static int level(String fileName) {
+        Matcher matcher = LEVEL_NAME.matcher(fileName);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Cannot tell the level of " + fileName
+                    + "; name it levelN_... or pass --level N");
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    static void configure(int level, String[] args) throws IOException {
+        switch (level) {
+            case 1: Level1.configure(args); break;
+            case 2: Level2.configure(args); break;
+            case 3: Level3.configure(args); break;
+            case 4: Level4.configure(args); break;
+            case 5: Level5.configure(args); break;
+            case 6: Level6.configure(args); break;
+            default: throw noSuchLevel(level);
+        }
+    }
+
+    static int processFile(int level, String inputFile, String outputFile) throws IOException {
+        switch (level) {
+            case 1: return Level1.processFile(inputFile, outputFile);
+            case 2: return Level2.processFile(inputFile, outputFile);
+            case 3: return Level3.processFile(inputFile, outputFile);
+            case 4: return Level4.processFile(inputFile, outputFile);
+            case 5: return Level5.processFile(inputFile, outputFile);
+            case 6: return Level6.processFile(inputFile, outputFile);
+            default: throw noSuchLevel(level);
+        }
+    }
+
+    static int process(int level, InputTokenizer tokens, ParallelCases.SolverPool pool, OutputEncoder out)
+            throws IOException {
+        switch (level) {
+            case 1: return Level1.process(tokens, pool, Shards.ALL, null, out);
+            case 2: return Level2.process(tokens, pool, Shards.ALL, null, out);
+            case 3: return Level3.process(tokens, pool, Shards.ALL, null, out);
+            case 4: return Level4.process(tokens, pool, Shards.ALL, null, out);
+            case 5: return Level5.process(tokens, pool, Shards.ALL, null, out);
+            case 6: return Level6.process(tokens, pool, Shards.ALL, null, out);
+            default: throw noSuchLevel(level);
+        }
+    }
+
+    /** Empties the in-memory path caches of the levels that have them. */
+    static void clearCaches() {
+        Level5.clearPathCache();
+        Level6.clearPathCache();
+    }
+
+    static void finish(int level, String[] args) throws IOException {
+        switch (level) {
+            case 3: Level3.finish(args); break;
+            case 4: Level4.finish(args); break;
+            case 5: Level5.finish(args); break;
+            case 6: Level6.finish(args); break;
+            default: break;
+        }
+    }
+
+    private static IllegalArgumentException noSuchLevel(int level) {
+        return new IllegalArgumentException("There is no level " + level);
+    }
+}
@@ -0,0 +1,52 @@
+import java.io.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Splits single long sequence lines of Level1 and Level2 across threads, set with --split-lines MB.
+ * Each stretch of a line in a memory-mapped window is cut at token boundaries into one chunk of at
+ * least MB megabytes per --threads thread; the chunks are reduced on a fork/join pool and their
+ * partial results merged left to right. Shorter lines, compressed and streamed inputs, and whatever
+ * a chunk cannot parse are read one batch at a time as before, so results and errors are the same
+ * either way. Without the option lines are not split.
+ */
+final class LineSplitter {
+
+    /** Lines are never split. */
+    static final LineSplitter OFF = new LineSplitter(null, 0);
+
+    private static final int MEGABYTE = 1 << 20;
+    // Chunks stay well within a mapped window
+    private static final int MAX_CHUNK_MB = 256;
+
+    private final ForkJoinPool pool;
+    private final int chunk;
+
+    private LineSplitter(ForkJoinPool pool, int chunk) {
+        this.pool = pool;
+        this.chunk = chunk;
+    }
+
+    /** --split-lines MB from the command line, with one chunk per --threads thread. */
+    static LineSplitter fromArgs(String[] args, int threads) {
+        String megabytes = Options.value(args, "--split-lines");
+        if (megabytes == null) {
+            return OFF;
+        }
+        int chunk = Integer.parseInt(megabytes);
+        if (chunk < 1 || chunk > MAX_CHUNK_MB) {
+            throw new IllegalArgumentException("--split-lines must be between 1 and " + MAX_CHUNK_MB
+                    + " MB, got " + chunk);
+        }
+        return new LineSplitter(new ForkJoinPool(threads), chunk * MEGABYTE);
+    }
+
+    /**
+     * Folds as much of the rest of the current line into the reducer as splitting it pays for; the
+     * caller reads on from where it stopped.
+     */
+    <R extends InputTokenizer.LineReducer<R>> void reduce(InputTokenizer tokens, R into) throws IOException {
+        if (pool != null) {
+            tokens.reduceLine(into, pool, chunk);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+import java.util.*;
+
+/**
+ * Command-line options shared by the levels and the runners: --name VALUE pairs and the few flags
+ * that take no value.
+ */
+final class Options {
+
+    // Options that take no value; every other option is followed by one
+    static final Set<String> FLAGS = Set.of("--no-solution-cache", "--journal", "--learn-strategy-order");
+
+    private Options() {
+    }
+
+    /** Value following name in args, or null if the option is absent. */
+    static String value(String[] args, String name) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /** True if the flag is among the args. */
+    static boolean flag(String[] args, String name) {
+        return Arrays.asList(args).contains(name);
+    }
+}
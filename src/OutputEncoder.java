@@ -0,0 +1,170 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes level outputs as ASCII straight into a reusable direct buffer that is flushed to a file or
+ * socket channel. Numbers and pace sequences are encoded digit by digit, so no per-line Strings are
+ * built. Line breaks are the platform's, as BufferedWriter.newLine wrote them before. Files can be
+ * written gzip-compressed as they are encoded.
+ *
+ * A streaming encoder also flushes whenever its writer has to wait for the next result, so a client
+ * on the other end of a socket sees each answer as soon as it is ready.
+ */
+final class OutputEncoder implements Closeable {
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    // Room for a long with its sign, so a number never has to be split across flushes
+    private static final int MAX_NUMBER_BYTES = 20;
+
+    private final WritableByteChannel channel;
+    private final boolean streaming;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private final byte[] digits = new byte[MAX_NUMBER_BYTES];
+
+    private OutputEncoder(WritableByteChannel channel, boolean streaming) {
+        this.channel = channel;
+        this.streaming = streaming;
+    }
+
+    /** Encoder writing to the file, which is created or truncated; compressed if gzip is set. */
+    static OutputEncoder create(Path file, boolean gzip) throws IOException {
+        if (gzip) {
+            return new OutputEncoder(Channels.newChannel(new FastGzipOutputStream(Files.newOutputStream(file))), false);
+        }
+        return new OutputEncoder(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), false);
+    }
+
+    /** Encoder writing to the channel, which it hands bytes to only when full or flushed. */
+    static OutputEncoder of(WritableByteChannel channel) {
+        return new OutputEncoder(channel, false);
+    }
+
+    /** Streaming encoder writing to the channel; closing the encoder closes the channel. */
+    static OutputEncoder stream(WritableByteChannel channel) {
+        return new OutputEncoder(channel, true);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /** Writes text as UTF-8; the ASCII results of the levels take the byte-per-char path. */
+    void write(CharSequence text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) >= 0x80) {
+                write(text.toString().getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            ensure(1);
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    /** Writes the bytes between the position and the limit of the given buffer as they are. */
+    void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            ensure(1);
+            int count = Math.min(buffer.remaining(), bytes.remaining());
+            ByteBuffer slice = bytes.slice();
+            slice.limit(count);
+            buffer.put(slice);
+            bytes.position(bytes.position() + count);
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        for (int at = 0; at < bytes.length; ) {
+            ensure(1);
+            int count = Math.min(buffer.remaining(), bytes.length - at);
+            buffer.put(bytes, at, count);
+            at += count;
+        }
+    }
+
+    void write(long value) throws IOException {
+        ensure(MAX_NUMBER_BYTES);
+        if (value >= 0 && value < 10) {
+            buffer.put((byte) ('0' + value));
+            return;
+        }
+
+        // Digits are produced from the lowest one up; working on the negative value covers Long.MIN_VALUE
+        int at = digits.length;
+        long rest = (value < 0) ? value : -value;
+        while (rest != 0) {
+            digits[--at] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        }
+        if (value < 0) {
+            digits[--at] = '-';
+        }
+        buffer.put(digits, at, digits.length - at);
+    }
+
+    void write(char c) throws IOException {
+        ensure(1);
+        buffer.put((byte) c);
+    }
+
+    /** Writes the paces separated by single spaces, as one line without its line break. */
+    void writePaces(int[] paces) throws IOException {
+        for (int i = 0; i < paces.length; i++) {
+            if (i > 0) {
+                write(' ');
+            }
+            write(paces[i]);
+        }
+    }
+
+    void newLine() throws IOException {
+        ensure(LINE_SEPARATOR.length);
+        buffer.put(LINE_SEPARATOR);
+    }
+
+    /** Called when the writer is about to wait; hands what is buffered to a streaming channel. */
+    void idle() throws IOException {
+        if (streaming) {
+            flush();
+        }
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Outputs are long runs of a few repeated tokens, which the fastest level already shrinks about 20x
+    // at under half the cost of the default level
+    private static final class FastGzipOutputStream extends GZIPOutputStream {
+        FastGzipOutputStream(OutputStream out) throws IOException {
+            super(out, 1 << 16);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Level3's accelerate-cruise-decelerate 1D profiles in closed form. The profile of a distance d at
+ * cruise pace c starts and ends at rest and runs 0, 5, 4, ..., c+1, then c for the d - 2(5-c)
+ * steps left, then c+1, ..., 5, 0, so it fits when d >= 2(5-c). Its time is
+ *
+ *     1 + 2 * (c+1 + ... + 5) + c * (d - 2(5-c)) + 1  =  32 + c*c + c*(d - 11).
+ *
+ * Level3 picks its cruise pace from these times and builds only the chosen profile. Paces are
+ * magnitudes here; a negative target gets the profile with every pace negated.
+ */
+final class PaceProfile {
+
+    static final int MAX_PACE = 5;
+
+    /** No cruise pace makes the time limit. */
+    static final int NONE = 0;
+
+    private PaceProfile() {
+    }
+
+    static boolean fits(long distance, int cruise) {
+        return distance >= 2 * (MAX_PACE - cruise);
+    }
+
+    /** Ticks of the profile of the distance at the cruise pace, which has to fit. */
+    static long time(long distance, int cruise) {
+        return 32 + cruise * cruise + cruise * (distance - 11);
+    }
+
+    /**
+     * Level3's choice: the slowest cruise pace, held for at least one step, whose profile makes the
+     * time limit, or NONE.
+     */
+    static int slowestCruise(long distance, int timeLimit) {
+        for (int cruise = MAX_PACE; cruise >= 1; cruise--) {
+            if (fits(distance - 1, cruise) && time(distance, cruise) <= timeLimit) {
+                return cruise;
+            }
+        }
+        return NONE;
+    }
+
+    /** The profile to the target at the cruise pace as space-separated paces; "0 0" for target 0. */
+    static String toString(int target, int cruise) {
+        if (target == 0) {
+            return "0 0";
+        }
+        long distance = Math.abs((long) target);
+        int sign = Integer.signum(target);
+        StringBuilder sb = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8, 3 * distance + 4));
+
+        sb.append('0');
+        for (int pace = MAX_PACE; pace > cruise; pace--) {
+            sb.append(' ').append(sign * pace);
+        }
+        String cruising = " " + sign * cruise;
+        for (long step = distance - 2 * (MAX_PACE - cruise); step > 0; step--) {
+            sb.append(cruising);
+        }
+        for (int pace = cruise + 1; pace <= MAX_PACE; pace++) {
+            sb.append(' ').append(sign * pace);
+        }
+        return sb.append(" 0").toString();
+    }
+}
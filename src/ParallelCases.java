@@ -0,0 +1,244 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Streams the independent cases of an input through a reader thread, a pool of solver threads and
+ * the calling thread, which writes results in input order. The stages are joined by bounded queues,
+ * so only a fixed number of cases is ever in memory and the first results are written while later
+ * cases are still being read.
+ */
+final class ParallelCases {
+
+    /** Reads the case with the given index, or returns null once the input has no more cases. */
+    interface CaseReader<C> {
+        C read(int index) throws IOException;
+    }
+
+    /** Solves one case; may be called from any solver thread. */
+    interface Solver<C, R> {
+        R solve(C input) throws IOException;
+    }
+
+    /** Writes the result of the case with the given index; called in input order. */
+    interface ResultWriter<R> {
+        void write(OutputEncoder out, int index, R result) throws IOException;
+    }
+
+    /** Writes the output of a run to an encoder and returns the number of cases written. */
+    interface Body {
+        int run(OutputEncoder out) throws IOException;
+    }
+
+    private static final class Task<C, R> {
+        final int index;
+        final C input;
+        final Solver<C, R> solver;
+        final boolean end;
+        final CompletableFuture<R> result = new CompletableFuture<>();
+
+        Task(int index, C input, Solver<C, R> solver, boolean end) {
+            this.index = index;
+            this.input = input;
+            this.solver = solver;
+            this.end = end;
+        }
+
+        void solve() {
+            try {
+                result.complete(solver.solve(input));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+    }
+
+    /**
+     * Solver threads shared by any number of concurrent runs. A thread that wakes up takes its fair
+     * share of the queued cases at once, so cases from runs arriving together are solved in batches
+     * without leaving other threads idle.
+     */
+    static final class SolverPool implements Closeable {
+        private final BlockingQueue<Task<?, ?>> work;
+        private final ExecutorService threads;
+        private final int size;
+
+        SolverPool(int size) {
+            this.size = size;
+            this.work = new ArrayBlockingQueue<>(capacity(size));
+            this.threads = Executors.newFixedThreadPool(size, runnable -> {
+                Thread thread = new Thread(runnable, "case-solver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < size; i++) {
+                threads.execute(this::solveCases);
+            }
+        }
+
+        private void solveCases() {
+            List<Task<?, ?>> batch = new ArrayList<>();
+            try {
+                while (true) {
+                    batch.add(work.take());
+                    work.drainTo(batch, work.size() / size);
+                    for (Task<?, ?> task : batch) {
+                        task.solve();
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                // The pool was closed
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        void submit(Task<?, ?> task) throws InterruptedException {
+            work.put(task);
+        }
+
+        @Override
+        public void close() {
+            threads.shutdownNow();
+        }
+    }
+
+    private static int capacity(int threads) {
+        return Math.max(64, threads * 8);
+    }
+
+    /**
+     * --threads N from the command line, defaulting to one thread per available processor. With
+     * --learn-strategy-order the default is one thread: the learned order, and with it the answers,
+     * would otherwise depend on the order in which cases finish.
+     */
+    static int threads(String[] args) {
+        String value = Options.value(args, "--threads");
+        if (value == null) {
+            return Options.flag(args, "--learn-strategy-order") ? 1 : Runtime.getRuntime().availableProcessors();
+        }
+        int threads = Integer.parseInt(value);
+        if (threads < 1) {
+            throw new IllegalArgumentException("--threads must be at least 1, got " + threads);
+        }
+        return threads;
+    }
+
+    /**
+     * Runs the body against a temporary file that replaces the output file only once the body has
+     * finished, so a failed run leaves the previous output alone. An output named *.gz is written
+     * gzip-compressed.
+     */
+    static int toFile(Path output, Body body) throws IOException {
+        Path partial = output.resolveSibling(output.getFileName() + ".partial");
+        boolean gzip = output.getFileName().toString().endsWith(".gz");
+        boolean complete = false;
+        try {
+            int written;
+            try (OutputEncoder out = OutputEncoder.create(partial, gzip)) {
+                written = body.run(out);
+            }
+            Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING);
+            complete = true;
+            return written;
+        } finally {
+            if (!complete) {
+                Files.deleteIfExists(partial);
+            }
+        }
+    }
+
+    /**
+     * Reads every case on a reader thread, solves the cases the shard owns on the pool and writes
+     * their results in input order from the calling thread; returns the number of cases written. The
+     * exception of the first failing case, whether reading or solving it, is rethrown after the cases
+     * before it have been written.
+     *
+     * With a journal, results go to the journal instead, cases it already holds are not solved again,
+     * and the output is compacted from the journal once every case is in it.
+     */
+    static <C, R> int pipeline(CaseReader<C> reader, SolverPool pool, Solver<C, R> solver, Shards shards,
+                               Journal journal, OutputEncoder out, ResultWriter<R> writer) throws IOException {
+        BlockingQueue<Task<C, R>> ordered = new ArrayBlockingQueue<>(capacity(pool.size()));
+
+        Thread reading = new Thread(() -> {
+            try {
+                int index = 0;
+                for (; ; index++) {
+                    C input;
+                    try {
+                        input = reader.read(index);
+                    } catch (Throwable t) {
+                        Task<C, R> failed = new Task<>(index, null, null, false);
+                        failed.result.completeExceptionally(t);
+                        ordered.put(failed);
+                        return;
+                    }
+                    if (input == null) {
+                        break;
+                    }
+                    if (!shards.owns(index)) {
+                        continue;
+                    }
+                    if (journal != null && journal.contains(index)) {
+                        // Solved by an earlier run; only its place in the order is kept
+                        Task<C, R> done = new Task<>(index, null, null, false);
+                        done.result.complete(null);
+                        ordered.put(done);
+                        continue;
+                    }
+                    Task<C, R> task = new Task<>(index, input, solver, false);
+                    ordered.put(task);
+                    pool.submit(task);
+                }
+                // The end marker carries the number of cases in the input
+                ordered.put(new Task<>(index, null, null, true));
+            } catch (InterruptedException e) {
+                // The writer gave up; nothing left to hand over
+            }
+        }, "case-reader");
+        reading.setDaemon(true);
+        reading.start();
+
+        int written = 0;
+        try {
+            Task<C, R> task;
+            for (task = ordered.take(); !task.end; task = ordered.take()) {
+                if (!task.result.isDone()) {
+                    out.idle();
+                }
+                R result = task.result.get();
+                if (journal == null) {
+                    shards.startCase(out, task.index);
+                    writer.write(out, task.index, result);
+                    written++;
+                } else if (task.solver != null) {
+                    journal.append(task.index, result, writer);
+                }
+            }
+            if (journal != null) {
+                written = journal.compact(out, shards);
+            }
+            shards.finish(out, task.index);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing results");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        } finally {
+            reading.interrupt();
+            if (journal != null) {
+                journal.sync();
+            }
+        }
+        return written;
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.*;
+
+/**
+ * Bounded LRU cache of safe paths, shared by the solver threads of a level. Negating x or y maps a
+ * case onto its mirror image and its paths onto the mirror's paths (the box is symmetric and the
+ * X-before-Y order within a tick is kept), so the levels solve every case in a canonical
+ * orientation (goal coordinates non-negative, and on an axis where the goal is 0, asteroid
+ * coordinates non-negative) and mirror the path back. The cache only ever sees canonical cases.
+ *
+ * An entry is the path a fresh solve of exactly that case and time limit returned, so a hit, on a
+ * repeat or on a mirror image, is the same path the case would get without the cache, whatever
+ * order cases come in and whichever thread solved them first.
+ */
+final class PathCache<P> {
+
+    private final Map<Key, P> entries;
+    private long hits;
+    private long misses;
+
+    PathCache(int capacity) {
+        this.entries = new LinkedHashMap<Key, P>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, P> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Whether an axis has to be negated to reach the canonical orientation. */
+    static boolean flips(int goal, int asteroid) {
+        return goal < 0 || (goal == 0 && asteroid < 0);
+    }
+
+    /** Cached path for the canonical case with the given time limit, or null. */
+    P get(int goalX, int goalY, int asteroidX, int asteroidY, int timeLimit) {
+        Key key = new Key(goalX, goalY, asteroidX, asteroidY, timeLimit);
+        synchronized (this) {
+            P path = entries.get(key);
+            if (path == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return path;
+        }
+    }
+
+    /** Stores the path a solve of the canonical case with the given time limit returned. */
+    void put(int goalX, int goalY, int asteroidX, int asteroidY, int timeLimit, P path) {
+        Key key = new Key(goalX, goalY, asteroidX, asteroidY, timeLimit);
+        synchronized (this) {
+            entries.putIfAbsent(key, path);
+        }
+    }
+
+    /** Drops every entry and the hit and miss counts. */
+    synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    private static final class Key {
+        final int goalX, goalY, asteroidX, asteroidY, timeLimit;
+
+        Key(int goalX, int goalY, int asteroidX, int asteroidY, int timeLimit) {
+            this.goalX = goalX;
+            this.goalY = goalY;
+            this.asteroidX = asteroidX;
+            this.asteroidY = asteroidY;
+            this.timeLimit = timeLimit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return goalX == other.goalX && goalY == other.goalY
+                    && asteroidX == other.asteroidX && asteroidY == other.asteroidY
+                    && timeLimit == other.timeLimit;
+        }
+
+        @Override
+        public int hashCode() {
+            return (((goalX * 31 + goalY) * 31 + asteroidX) * 31 + asteroidY) * 31 + timeLimit;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Minimum-time 1D pace profiles: for every distance up to a maximum, the sequence from rest to rest
+ * that covers it in the fewest ticks. The table is built once by dynamic programming over (steps
+ * left, current pace) under the pace rules the judge checks (0 <-> 5, 5 <-> 4, ..., 2 <-> 1, each
+ * pace may repeat), so a profile is an array read and optimal by construction.
+ *
+ * Past 10 steps the optimal profile bottoms out at pace 1 (0 5 4 3 2 1 ... 1 2 3 4 5 0), and each
+ * further step is one more 1 in the middle; distances beyond the table are answered that way.
+ * --profile-table N sets the maximum distance (default 1024, at least 10).
+ *
+ * Profiles are immutable and interned: every signed distance in the table has one Profile, shared
+ * by all threads. Those beyond it are built on first use and published lock-free, up to a distance
+ * of LAZY_LIMIT; anything longer is built per call.
+ */
+final class ProfileTable {
+
+    static final int DEFAULT_MAX_DISTANCE = 1024;
+    static final ProfileTable DEFAULT = new ProfileTable(DEFAULT_MAX_DISTANCE);
+
+    private static final int MAX_PACE = 5;
+    private static final int MIN_MAX_DISTANCE = 10;
+    private static final int LAZY_LIMIT = 1 << 16;
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+
+    /**
+     * One profile as a read-only list of its signed paces, including the leading and trailing 0,
+     * with its time in ticks.
+     */
+    static final class Profile extends AbstractList<Integer> implements RandomAccess {
+        private final int[] paces;
+        private final long time;
+
+        private Profile(int[] paces, long time) {
+            this.paces = paces;
+            this.time = time;
+        }
+
+        int pace(int index) {
+            return paces[index];
+        }
+
+        long time() {
+            return time;
+        }
+
+        /** Copies the paces from index from on into the array at the given offset. */
+        void copyTo(int from, int[] target, int offset) {
+            System.arraycopy(paces, from, target, offset, paces.length - from);
+        }
+
+        @Override
+        public Integer get(int index) {
+            return paces[index];
+        }
+
+        @Override
+        public int size() {
+            return paces.length;
+        }
+    }
+
+    private final int maxDistance;
+    // Profile of target t at index t + maxDistance
+    private final Profile[] profiles;
+    // Profile of target t beyond the table at index |t| - maxDistance - 1, for each sign
+    private final AtomicReferenceArray<Profile> forward;
+    private final AtomicReferenceArray<Profile> backward;
+    // Index of the first pace 1 in the longest profile, where longer distances add their steps
+    private final int cruiseStart;
+
+    private ProfileTable(int maxDistance) {
+        this.maxDistance = maxDistance;
+        profiles = new Profile[2 * maxDistance + 1];
+        build();
+
+        int lazy = Math.max(0, LAZY_LIMIT - maxDistance);
+        forward = new AtomicReferenceArray<>(lazy);
+        backward = new AtomicReferenceArray<>(lazy);
+
+        Profile longest = profiles[2 * maxDistance];
+        int at = 0;
+        while (longest.pace(at) != 1) {
+            at++;
+        }
+        cruiseStart = at;
+    }
+
+    /** --profile-table N from the command line. */
+    static ProfileTable fromArgs(String[] args) {
+        String max = Options.value(args, "--profile-table");
+        if (max == null) {
+            return DEFAULT;
+        }
+        int maxDistance = Integer.parseInt(max);
+        if (maxDistance < MIN_MAX_DISTANCE) {
+            throw new IllegalArgumentException("--profile-table must be at least " + MIN_MAX_DISTANCE
+                    + ", got " + maxDistance);
+        }
+        return (maxDistance == DEFAULT_MAX_DISTANCE) ? DEFAULT : new ProfileTable(maxDistance);
+    }
+
+    /**
+     * cost[r][v] is the fewest ticks the paces still to come take when the last pace was v and r steps
+     * are left, the sequence ending with a 0 once none are; next[r][v] is the pace that achieves it.
+     */
+    private void build() {
+        int[][] cost = new int[maxDistance + 1][MAX_PACE + 1];
+        int[][] next = new int[maxDistance + 1][MAX_PACE + 1];
+
+        for (int left = 0; left <= maxDistance; left++) {
+            // From rest only pace 5 moves; resting again never pays
+            cost[left][0] = (left == 0) ? 0 : MAX_PACE + cost[left - 1][MAX_PACE];
+            next[left][0] = MAX_PACE;
+
+            for (int pace = 1; pace <= MAX_PACE; pace++) {
+                int best = UNREACHABLE;
+                int bestNext = -1;
+                if (pace == MAX_PACE && 1 + cost[left][0] < best) {
+                    best = 1 + cost[left][0];
+                    bestNext = 0;
+                }
+                if (left > 0) {
+                    int slowest = Math.min(MAX_PACE, pace + 1);
+                    for (int following = Math.max(1, pace - 1); following <= slowest; following++) {
+                        if (following + cost[left - 1][following] < best) {
+                            best = following + cost[left - 1][following];
+                            bestNext = following;
+                        }
+                    }
+                }
+                cost[left][pace] = best;
+                next[left][pace] = bestNext;
+            }
+        }
+
+        profiles[maxDistance] = new Profile(new int[]{0, 0}, 2);
+        for (int distance = 1; distance <= maxDistance; distance++) {
+            int[] paces = new int[distance + 2];
+            int pace = 0;
+            for (int i = 1, left = distance; i < paces.length; i++) {
+                pace = next[left][pace];
+                paces[i] = pace;
+                if (pace != 0) {
+                    left--;
+                }
+            }
+            // The leading 0 takes one tick before the rest
+            long time = 1 + cost[distance][0];
+            profiles[maxDistance + distance] = new Profile(paces, time);
+            profiles[maxDistance - distance] = new Profile(negate(paces), time);
+        }
+    }
+
+    private static int[] negate(int[] paces) {
+        int[] negated = new int[paces.length];
+        for (int i = 0; i < paces.length; i++) {
+            negated[i] = -paces[i];
+        }
+        return negated;
+    }
+
+    /** The shared profile to the target; its paces are negated for a negative target. */
+    Profile profile(int target) {
+        if (target >= -maxDistance && target <= maxDistance) {
+            return profiles[target + maxDistance];
+        }
+
+        long slot = Math.abs((long) target) - maxDistance - 1;
+        AtomicReferenceArray<Profile> lazy = (target > 0) ? forward : backward;
+        if (slot >= lazy.length()) {
+            return extend(target);
+        }
+        Profile profile = lazy.get((int) slot);
+        if (profile == null) {
+            // Threads racing for the same slot build equal profiles; the first one published wins
+            lazy.compareAndSet((int) slot, null, extend(target));
+            profile = lazy.get((int) slot);
+        }
+        return profile;
+    }
+
+    // The longest tabled profile with the extra steps as 1s after its first 1
+    private Profile extend(int target) {
+        Profile longest = profiles[(target > 0) ? 2 * maxDistance : 0];
+        int extra = Math.abs(target) - maxDistance;
+        int[] paces = new int[longest.size() + extra];
+        longest.copyTo(0, paces, 0);
+        Arrays.fill(paces, cruiseStart + 1, cruiseStart + 1 + extra, Integer.signum(target));
+        longest.copyTo(cruiseStart + 1, paces, cruiseStart + 1 + extra);
+        return new Profile(paces, longest.time() + extra);
+    }
+
+    /** Ticks of the profile of the distance (either sign), including both zeros. */
+    long time(long distance) {
+        distance = Math.abs(distance);
+        return (distance <= maxDistance) ? profiles[maxDistance + (int) distance].time()
+                : profiles[2 * maxDistance].time() + (distance - maxDistance);
+    }
+
+    /** Paces in the profile of the distance (either sign): one per step plus the two zeros. */
+    static int length(int distance) {
+        return Math.abs(distance) + 2;
+    }
+
+    /** The profile to the target as space-separated paces. */
+    String toString(int target) {
+        Profile profile = profile(target);
+        StringBuilder sb = new StringBuilder(3 * profile.size());
+        for (int i = 0; i < profile.size(); i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(profile.pace(i));
+        }
+        return sb.toString();
+    }
+}
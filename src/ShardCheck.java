@@ -0,0 +1,188 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Checks that sharding leaves a level's output alone. Each input is solved once by a single process
+ * and once by --shards N shard processes (default 2) and a merge, each a BatchRunner in a JVM of its
+ * own on this classpath, and the two outputs are compared byte for byte.
+ *
+ * Level5 and Level6 inputs are first extended: every case is followed by its x and y mirror images
+ * and a repeat, so a case and its twins land in different shards, which is where anything the cases
+ * of one process share (a path cache, a learning strategy order) would show. With
+ * --learn-strategy-order the order is learned by a first run and frozen for the others. Runs go
+ * without the solution cache; every other option is passed on to them. Exits with status 1 on a
+ * mismatch and leaves the outputs in a temporary directory for a look.
+ *
+ *     java ShardCheck [--shards N] [options] FILE...
+ */
+public class ShardCheck {
+
+    private static final int DEFAULT_SHARDS = 2;
+
+    public static void main(String[] args) {
+        try {
+            if (!run(args)) {
+                System.exit(1);
+            }
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    static boolean run(String[] args) throws IOException, InterruptedException {
+        String shardsOption = Options.value(args, "--shards");
+        int shards = (shardsOption != null) ? Integer.parseInt(shardsOption) : DEFAULT_SHARDS;
+        if (shards < 2) {
+            throw new IllegalArgumentException("--shards must be at least 2, got " + shards);
+        }
+
+        List<String> files = new ArrayList<>();
+        List<String> options = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                files.add(args[i]);
+            } else if (Options.FLAGS.contains(args[i])) {
+                options.add(args[i]);
+            } else if (!args[i].equals("--shards") && !args[i].equals("--output-dir")) {
+                options.add(args[i]);
+                options.add(args[++i]);
+            } else {
+                i++;
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("Usage: java ShardCheck [--shards N] [options] FILE...");
+        }
+        options.remove("--no-solution-cache");
+        options.add("--no-solution-cache");
+
+        Path work = Files.createTempDirectory("shard-check");
+        boolean identical = true;
+        for (String file : files) {
+            identical &= check(Paths.get(file).toAbsolutePath(), shards, options, work);
+        }
+        System.out.println(identical ? "Sharded outputs are identical" : "Outputs left in " + work);
+        return identical;
+    }
+
+    private static boolean check(Path file, int shards, List<String> options, Path work)
+            throws IOException, InterruptedException {
+        String name = file.getFileName().toString();
+        int level = Levels.level(name);
+        Path input = file;
+        List<String> runOptions = new ArrayList<>(options);
+
+        if (level >= 5) {
+            input = work.resolve(name.replaceFirst("(\\.in)?(\\.gz)?$", "") + "_twins.in");
+            Files.write(input, withTwins(readLines(file)));
+            if (runOptions.remove("--learn-strategy-order")) {
+                Path order = work.resolve(name + ".order");
+                solve(work, runOptions, "learned", input, "--learn-strategy-order",
+                        "--save-strategy-order", order.toString());
+                runOptions.add("--strategy-order");
+                runOptions.add(order.toString());
+            }
+        }
+
+        solve(work, runOptions, "single", input);
+        for (int shard = 0; shard < shards; shard++) {
+            solve(work, runOptions, "sharded", input, "--shard", shard + "/" + shards);
+        }
+        solve(work, runOptions, "sharded", input, "--merge-shards", Integer.toString(shards));
+
+        String output = input.getFileName().toString().replace(".in", ".out");
+        Path single = work.resolve("single").resolve(output);
+        Path sharded = work.resolve("sharded").resolve(output);
+        long mismatch = Files.mismatch(single, sharded);
+        if (mismatch < 0) {
+            System.out.println(name + ": identical with " + shards + " shards");
+            return true;
+        }
+        System.out.println(name + ": differs with " + shards + " shards from line " + lineOf(single, mismatch));
+        return false;
+    }
+
+    // Every case followed by its x mirror, its y mirror and a repeat of itself
+    private static List<String> withTwins(List<String> lines) {
+        int cases = Integer.parseInt(lines.get(0).trim());
+        List<String> twins = new ArrayList<>();
+        twins.add(Integer.toString(4 * cases));
+        for (int i = 0; i < cases; i++) {
+            String goal = lines.get(1 + 2 * i).trim();
+            String asteroid = lines.get(2 + 2 * i).trim();
+            twins.add(goal);
+            twins.add(asteroid);
+            twins.add(mirror(goal, true));
+            twins.add(mirror(asteroid, true));
+            twins.add(mirror(goal, false));
+            twins.add(mirror(asteroid, false));
+            twins.add(goal);
+            twins.add(asteroid);
+        }
+        return twins;
+    }
+
+    // "x,y" with an optional time limit after it, one axis negated
+    private static String mirror(String point, boolean flipX) {
+        String[] parts = point.split("\\s+", 2);
+        String[] xy = parts[0].split(",");
+        long x = Long.parseLong(xy[0].trim());
+        long y = Long.parseLong(xy[1].trim());
+        String mirrored = (flipX ? -x : x) + "," + (flipX ? y : -y);
+        return (parts.length > 1) ? mirrored + " " + parts[1] : mirrored;
+    }
+
+    private static List<String> readLines(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            List<String> lines = new ArrayList<>();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!line.isBlank()) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        }
+    }
+
+    // Runs BatchRunner on the input in a JVM of its own, writing to the output directory under work
+    private static void solve(Path work, List<String> options, String outputDir, Path input, String... extra)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), "BatchRunner"));
+        command.addAll(options);
+        command.addAll(Arrays.asList(extra));
+        command.add("--output-dir");
+        command.add(work.resolve(outputDir).toString());
+        command.add(input.toString());
+
+        Process process = new ProcessBuilder(command).directory(work.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        if (process.waitFor() != 0) {
+            throw new IOException("BatchRunner failed on " + input + " with " + String.join(" ", extra));
+        }
+    }
+
+    private static long lineOf(Path file, long offset) throws IOException {
+        long line = 1;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            for (long at = 0; at < offset; at++) {
+                if (in.read() == '\n') {
+                    line++;
+                }
+            }
+        }
+        return line;
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Splits one input across several processes. With --shard i/N a level solves the cases whose index
+ * is i modulo N and writes them to <output>.shard-i-of-N, each case preceded by a header line
+ * "#<index>" and the file ending in "#end <case count>". Because each case's result is written with
+ * its index in the whole input, the blank lines Level4-Level6 put between cases are part of the
+ * right records. A later run with --merge-shards N concatenates the records in index order into
+ * <output>, byte for byte what a single process writes, and removes the shard files.
+ *
+ * The merge is byte-identical to a single run only when every case gets the same answer whichever
+ * process solves it and whatever it solved before. The path caches of Level5 and Level6 keep to
+ * that, since a hit is always the path a fresh solve returns. Two things do not:
+ * - a strategy order learned with --learn-strategy-order depends on which cases a process has
+ *   seen, so leave it off or freeze it with --strategy-order FILE;
+ * - with --case-budget, answers depend on timing.
+ * ShardCheck compares sharded and single runs, with mirrored and repeated cases.
+ *
+ * Whether sharded or not, --journal keeps the output's progress in a Journal while it is written.
+ */
+final class Shards {
+
+    /** Writes the output of one file given the journal to keep, which is null without --journal. */
+    interface Body {
+        int run(OutputEncoder out, Journal journal) throws IOException;
+    }
+
+    /** Solve and write every case, without headers. */
+    static final Shards ALL = new Shards(0, 1, false, false, false);
+
+    private final int index;
+    private final int count;
+    private final boolean sharded;
+    private final boolean merging;
+    private final boolean journaling;
+
+    private Shards(int index, int count, boolean sharded, boolean merging, boolean journaling) {
+        this.index = index;
+        this.count = count;
+        this.sharded = sharded;
+        this.merging = merging;
+        this.journaling = journaling;
+    }
+
+    /** --shard i/N or --merge-shards N and --journal from the command line. */
+    static Shards fromArgs(String[] args) {
+        boolean journaling = Options.flag(args, "--journal");
+        String shard = Options.value(args, "--shard");
+        String merge = Options.value(args, "--merge-shards");
+        if (shard != null && merge != null) {
+            throw new IllegalArgumentException("--shard and --merge-shards cannot be combined");
+        }
+        if (merge != null) {
+            int count = Integer.parseInt(merge);
+            if (count < 1) {
+                throw new IllegalArgumentException("--merge-shards must be at least 1, got " + count);
+            }
+            return new Shards(0, count, false, true, false);
+        }
+        if (shard == null) {
+            return journaling ? new Shards(0, 1, false, false, true) : ALL;
+        }
+
+        String[] parts = shard.split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("--shard expects i/N, got " + shard);
+        }
+        int index = Integer.parseInt(parts[0]);
+        int count = Integer.parseInt(parts[1]);
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("--shard " + shard + " needs 0 <= i < N");
+        }
+        return new Shards(index, count, true, false, journaling);
+    }
+
+    /** True when this process writes shard records instead of a plain output. */
+    boolean sharded() {
+        return sharded;
+    }
+
+    /** Suffix telling processes of different shards apart, e.g. for their solution cache files. */
+    String suffix() {
+        return sharded() ? ".shard-" + index + "-of-" + count : "";
+    }
+
+    boolean owns(int caseIndex) {
+        return caseIndex % count == index;
+    }
+
+    /**
+     * Writes the output file of this process: the plain output, this shard's records, or, when
+     * merging, the output reassembled from the shard files (the body is not run then). Returns the
+     * number of cases written.
+     */
+    int toFile(Path input, Path output, Body body) throws IOException {
+        if (merging) {
+            return merge(output);
+        }
+        Path target = output.resolveSibling(output.getFileName() + suffix());
+        if (!journaling) {
+            return ParallelCases.toFile(target, out -> body.run(out, null));
+        }
+
+        // The journal outlives a failed run and goes only once the output is in place
+        try (Journal journal = Journal.open(input, target)) {
+            int written = ParallelCases.toFile(target, out -> body.run(out, journal));
+            journal.delete();
+            return written;
+        }
+    }
+
+    void startCase(OutputEncoder out, int caseIndex) throws IOException {
+        if (sharded()) {
+            out.write('#');
+            out.write(caseIndex);
+            out.newLine();
+        }
+    }
+
+    void finish(OutputEncoder out, int cases) throws IOException {
+        if (sharded()) {
+            out.write("#end ");
+            out.write(cases);
+            out.newLine();
+        }
+    }
+
+    private int merge(Path output) throws IOException {
+        List<Path> files = new ArrayList<>();
+        List<ByteBuffer> contents = new ArrayList<>();
+        int total = -1;
+        for (int shard = 0; shard < count; shard++) {
+            Shards part = new Shards(shard, count, true, false, false);
+            Path file = output.resolveSibling(output.getFileName() + part.suffix());
+            ByteBuffer content = read(file);
+            int cases = cases(content, file);
+            if (total >= 0 && cases != total) {
+                throw new IOException(file + " has " + cases + " cases in its input, other shards have " + total);
+            }
+            total = cases;
+            files.add(file);
+            contents.add(content);
+        }
+
+        // Each shard holds every count-th case, in order, so the merge takes one record from each in turn
+        int[] at = new int[count];
+        int cases = total;
+        int written = ParallelCases.toFile(output, out -> {
+            for (int caseIndex = 0; caseIndex < cases; caseIndex++) {
+                int shard = caseIndex % count;
+                at[shard] = copyRecord(contents.get(shard), at[shard], caseIndex, files.get(shard), out);
+            }
+            return cases;
+        });
+
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        return written;
+    }
+
+    // Shard files are always plain text; only the merged output is compressed if its name asks for it
+    private static ByteBuffer read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            throw new NoSuchFileException(file.toString(), null, "missing; every shard has to finish before the merge");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // Case count from the "#end <count>" trailer, which also proves the shard was written completely
+    private static int cases(ByteBuffer content, Path file) throws IOException {
+        int end = content.limit();
+        if (end == 0) {
+            throw new IOException(file + " is empty; the shard did not finish");
+        }
+        int start = end - 1;
+        while (start > 0 && content.get(start - 1) != '\n') {
+            start--;
+        }
+        String trailer = line(content, start, end);
+        if (!trailer.startsWith("#end ")) {
+            throw new IOException(file + " does not end with an #end line; the shard did not finish");
+        }
+        return Integer.parseInt(trailer.substring(5));
+    }
+
+    // Copies the record of the case starting at offset to out and returns the offset after it
+    private static int copyRecord(ByteBuffer content, int offset, int caseIndex, Path file, OutputEncoder out)
+            throws IOException {
+        int lineEnd = nextLine(content, offset);
+        String header = line(content, offset, lineEnd);
+        if (!header.equals("#" + caseIndex)) {
+            throw new IOException(file + ": expected the record of case " + caseIndex + ", found '" + header + "'");
+        }
+
+        int end = lineEnd;
+        while (end < content.limit() && content.get(end) != '#') {
+            end = nextLine(content, end);
+        }
+        out.write(content.duplicate().position(lineEnd).limit(end));
+        return end;
+    }
+
+    static int nextLine(ByteBuffer content, int offset) {
+        while (offset < content.limit() && content.get(offset++) != '\n') {
+            // Skip to just past the line break
+        }
+        return offset;
+    }
+
+    static String line(ByteBuffer content, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        content.get(start, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII).trim();
+    }
+}
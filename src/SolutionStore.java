@@ -0,0 +1,222 @@
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * On-disk cache of solved cases, so reruns over mostly unchanged input files only solve the cases
+ * that are new or edited. Cases are addressed by a 64-bit hash of their parsed values; solutions are
+ * the output lines of the case. Each record keeps the case it solves, and a lookup only hits if that
+ * is the case asked for, so two cases sharing a hash never get each other's answer.
+ *
+ * The file is append-only: a header (magic, fingerprint of the solver) followed by records of (key
+ * hash, length, UTF-8 case, length, UTF-8 solution). The fingerprint covers the class files of every class the answers
+ * depend on, nested classes included, and the options that change them, with the contents of any
+ * file they name. A file written by a different build or with different options is discarded, and a
+ * record cut short by an interrupted run is dropped on the next load. A run holds a lock on its file
+ * while it is open; another run that finds the file locked solves without the cache.
+ */
+final class SolutionStore implements Closeable {
+
+    private static final int MAGIC = 0x534f4c32;
+    private static final String DEFAULT_DIR = ".solution-cache";
+
+    // A cached solution with the case it solves
+    private static final class Solved {
+        final String caseKey;
+        final String solution;
+
+        Solved(String caseKey, String solution) {
+            this.caseKey = caseKey;
+            this.solution = solution;
+        }
+    }
+
+    private final Map<Long, Solved> solutions;
+    private DataOutputStream out;
+    private int hits;
+    private int misses;
+
+    private SolutionStore(Map<Long, Solved> solutions) {
+        this.solutions = solutions;
+    }
+
+    /** A store that never hits and keeps nothing. */
+    static SolutionStore disabled() {
+        return new SolutionStore(new HashMap<>());
+    }
+
+    /**
+     * Opens the store for a level unless --no-solution-cache is given. --solution-cache DIR moves the
+     * cache files out of .solution-cache. The solver classes and the named options are what the
+     * level's answers depend on.
+     */
+    static SolutionStore fromArgs(String[] args, String level, List<String> options, Class<?>... solver)
+            throws IOException {
+        if (Options.flag(args, "--no-solution-cache")) {
+            return disabled();
+        }
+        String dir = Options.value(args, "--solution-cache");
+        Path directory = Paths.get(dir != null ? dir : DEFAULT_DIR);
+        Files.createDirectories(directory);
+        // Shard processes run side by side, so each appends to a file of its own
+        return open(directory.resolve(level + Shards.fromArgs(args).suffix() + ".cache"),
+                fingerprint(args, options, solver));
+    }
+
+    static SolutionStore open(Path file, long fingerprint) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.tryLock() == null) {
+                channel.close();
+                System.err.println("Solution cache " + file + " is in use by another run; solving without it");
+                return disabled();
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            channel.close();
+            throw e;
+        }
+
+        Map<Long, Solved> solutions = new HashMap<>();
+        long fileLength = channel.size();
+        long validLength = 0;
+        // Not closed: closing the stream would close the channel and release the lock
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        try {
+            if (fileLength >= 12 && in.readInt() == MAGIC && in.readLong() == fingerprint) {
+                validLength = 12;
+                while (true) {
+                    long key = in.readLong();
+                    byte[] caseBytes = readRecordBytes(in, fileLength - validLength - 12);
+                    if (caseBytes == null) {
+                        break;
+                    }
+                    byte[] solutionBytes = readRecordBytes(in, fileLength - validLength - 16 - caseBytes.length);
+                    if (solutionBytes == null) {
+                        break;
+                    }
+                    solutions.put(key, new Solved(new String(caseBytes, StandardCharsets.UTF_8),
+                            new String(solutionBytes, StandardCharsets.UTF_8)));
+                    validLength += 16 + caseBytes.length + solutionBytes.length;
+                }
+            }
+        } catch (EOFException e) {
+            // End of file, possibly in the middle of a record that was never finished
+        }
+
+        SolutionStore store = new SolutionStore(solutions);
+        store.openForAppend(channel, validLength, fingerprint);
+        return store;
+    }
+
+    // A length-prefixed byte string, or null if the length runs past the bytes left in the file
+    private static byte[] readRecordBytes(DataInputStream in, long left) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > left) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private void openForAppend(FileChannel channel, long validLength, long fingerprint) throws IOException {
+        // Cut off a stale file or a partial record before appending behind it
+        channel.truncate(validLength);
+        channel.position(validLength);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        if (validLength == 0) {
+            out.writeInt(MAGIC);
+            out.writeLong(fingerprint);
+        }
+    }
+
+    /** Cached solution of the case, or null. */
+    synchronized String get(String caseKey) {
+        Solved solved = solutions.get(hash(caseKey));
+        if (solved == null || !solved.caseKey.equals(caseKey)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return solved.solution;
+    }
+
+    synchronized void put(String caseKey, String solution) throws IOException {
+        if (out == null) {
+            return;
+        }
+        // A case whose hash is taken by another one is simply not cached
+        long key = hash(caseKey);
+        if (solutions.putIfAbsent(key, new Solved(caseKey, solution)) != null) {
+            return;
+        }
+        byte[] caseBytes = caseKey.getBytes(StandardCharsets.UTF_8);
+        byte[] solutionBytes = solution.getBytes(StandardCharsets.UTF_8);
+        out.writeLong(key);
+        out.writeInt(caseBytes.length);
+        out.write(caseBytes);
+        out.writeInt(solutionBytes.length);
+        out.write(solutionBytes);
+    }
+
+    synchronized int hits() {
+        return hits;
+    }
+
+    synchronized int misses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    // Changes whenever a solver class is recompiled with different code or an option that changes the
+    // answers is set differently, invalidating the old solutions
+    private static long fingerprint(String[] args, List<String> options, Class<?>... solver) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Class<?> c : solver) {
+            addClassFiles(c, bytes);
+        }
+        for (String option : options) {
+            String value = Options.FLAGS.contains(option)
+                    ? Boolean.toString(Options.flag(args, option)) : Options.value(args, option);
+            bytes.write((option + "=" + value + "\n").getBytes(StandardCharsets.UTF_8));
+            if (value != null && Files.isRegularFile(Paths.get(value))) {
+                bytes.write(Files.readAllBytes(Paths.get(value)));
+            }
+        }
+        return fnv1a(bytes.toByteArray());
+    }
+
+    private static void addClassFiles(Class<?> c, ByteArrayOutputStream bytes) throws IOException {
+        try (InputStream in = c.getResourceAsStream(c.getName() + ".class")) {
+            if (in != null) {
+                bytes.write(in.readAllBytes());
+            }
+        }
+        for (Class<?> nested : c.getDeclaredClasses()) {
+            addClassFiles(nested, bytes);
+        }
+    }
+
+    private static long hash(String caseKey) {
+        return fnv1a(caseKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long fnv1a(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
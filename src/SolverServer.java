@@ -0,0 +1,127 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps the solvers of every level in one long-running JVM and answers cases over a local socket,
+ * so callers stop paying for JVM startup and cold code on every run.
+ *
+ * One request per connection: the client sends a header line "level N" followed by an input in the
+ * level's usual format (the case count, then the cases) and may then close its side. Answers are
+ * streamed back in the level's usual output format as they are solved, and the server closes the
+ * connection after the last one. Invalid input ends the answer with a line "Error: message".
+ *
+ * --port N listens on 127.0.0.1 (default 7654); --socket PATH listens on a Unix domain socket
+ * instead. All connections share one pool of --threads N solver threads, whose threads take the
+ * cases of concurrent requests in batches. --warm-up FILE solves a sample input (named levelN_...)
+ * a few times before the server accepts connections. The level options (--no-solution-cache,
+ * --table, --strategy-order, --learn-strategy-order, ...) work as they do for the level mains.
+ */
+public class SolverServer {
+
+    private static final int DEFAULT_PORT = 7654;
+    private static final int WARM_UP_ROUNDS = 3;
+
+    public static void main(String[] args) {
+        try {
+            serve(args);
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    static void serve(String[] args) throws IOException {
+        ParallelCases.SolverPool pool = new ParallelCases.SolverPool(ParallelCases.threads(args));
+
+        // Warm up before the levels are configured, so the sample is really solved and not
+        // answered from a solution cache; every round starts with empty path caches, and none of
+        // what the warm-up learned or cached carries over to the requests
+        String warmUp = Options.value(args, "--warm-up");
+        if (warmUp != null) {
+            warmUp(Paths.get(warmUp), pool);
+        }
+
+        for (int level = 1; level <= Levels.COUNT; level++) {
+            Levels.configure(level, args);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                for (int level = 1; level <= Levels.COUNT; level++) {
+                    Levels.finish(level, args);
+                }
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+            }
+        }));
+
+        ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "solver-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ServerSocketChannel server = open(args)) {
+            System.out.println("Listening on " + server.getLocalAddress());
+            while (true) {
+                SocketChannel client = server.accept();
+                connections.execute(() -> answer(client, pool));
+            }
+        }
+    }
+
+    private static ServerSocketChannel open(String[] args) throws IOException {
+        String socket = Options.value(args, "--socket");
+        if (socket != null) {
+            // A socket file left behind by an earlier server would make the bind fail
+            Path path = Paths.get(socket);
+            Files.deleteIfExists(path);
+            ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(path));
+            path.toFile().deleteOnExit();
+            return server;
+        }
+
+        String port = Options.value(args, "--port");
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                (port != null) ? Integer.parseInt(port) : DEFAULT_PORT));
+        return server;
+    }
+
+    private static void warmUp(Path sample, ParallelCases.SolverPool pool) throws IOException {
+        int level = Levels.level(sample.getFileName().toString());
+        long start = System.nanoTime();
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            try (InputTokenizer tokens = InputTokenizer.open(sample);
+                 OutputEncoder discard = OutputEncoder.stream(Channels.newChannel(OutputStream.nullOutputStream()))) {
+                Levels.process(level, tokens, pool, discard);
+            }
+            Levels.clearCaches();
+        }
+        System.out.println(String.format("Warm-up: %d rounds of %s in %.2f s", WARM_UP_ROUNDS, sample,
+                (System.nanoTime() - start) / 1e9));
+    }
+
+    private static void answer(SocketChannel client, ParallelCases.SolverPool pool) {
+        long start = System.nanoTime();
+        try (SocketChannel channel = client;
+             InputTokenizer tokens = InputTokenizer.of(channel, "request");
+             OutputEncoder out = OutputEncoder.stream(channel)) {
+            try {
+                tokens.expectWord("level");
+                int level = tokens.nextInt();
+                tokens.skipLine();
+                int cases = Levels.process(level, tokens, pool, out);
+                System.out.println(String.format("Level %d: %d cases in %.3f s", level, cases,
+                        (System.nanoTime() - start) / 1e9));
+            } catch (IOException | RuntimeException e) {
+                out.write("Error: " + e.getMessage());
+                out.newLine();
+            }
+        } catch (IOException e) {
+            // The client went away before its answers were written
+        }
+    }
+}
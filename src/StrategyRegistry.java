@@ -0,0 +1,178 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Order in which Level5 / Level6 try their path strategies. Cases are grouped into geometry buckets
+ * (where the asteroid sits relative to the start-goal rectangle, and how far away the goal is), and
+ * within a bucket strategies are tried cheapest-per-success first: the candidates a strategy checks
+ * per attempt, divided by how often it succeeds. Going by success rate alone would put the detour
+ * search first everywhere, since it mostly runs only once the cheap strategies have already failed.
+ *
+ * By default every bucket keeps the order findPath always used (direct, x-first, y-first, then the
+ * detours), so the answers depend on the input alone. Learning is opt-in with --learn-strategy-order:
+ * the order then depends on which cases were solved before and in what order, so a learned ordering
+ * can be written to a file and loaded back frozen with --strategy-order FILE.
+ */
+final class StrategyRegistry {
+
+    static final int DIRECT = 0;
+    static final int X_FIRST = 1;
+    static final int Y_FIRST = 2;
+    static final int DETOUR = 3;
+    static final int STRATEGIES = 4;
+
+    private static final String[] NAMES = {"direct", "x-first", "y-first", "detour"};
+    private static final int[] DEFAULT_ORDER = {DIRECT, X_FIRST, Y_FIRST, DETOUR};
+
+    // Goal distance bands: 0-1, 2-3, 4-7, ... up to 64 and beyond
+    private static final int DISTANCE_BANDS = 8;
+    private static final int BUCKETS = 9 * DISTANCE_BANDS;
+
+    private final AtomicIntegerArray tries = new AtomicIntegerArray(BUCKETS * STRATEGIES);
+    private final AtomicIntegerArray wins = new AtomicIntegerArray(BUCKETS * STRATEGIES);
+    private final AtomicIntegerArray candidates = new AtomicIntegerArray(BUCKETS * STRATEGIES);
+    private final int[][] frozen;
+
+    /** The default order in every bucket, never learning. */
+    static final StrategyRegistry DEFAULT = new StrategyRegistry(defaultOrders());
+
+    private StrategyRegistry(int[][] frozen) {
+        this.frozen = frozen;
+    }
+
+    static StrategyRegistry learning() {
+        return new StrategyRegistry(null);
+    }
+
+    /**
+     * Reads --strategy-order FILE (load a frozen ordering) or --learn-strategy-order (learn as cases
+     * are solved) from the command line; with neither the default order is used.
+     */
+    static StrategyRegistry fromArgs(String[] args) throws IOException {
+        String file = Options.value(args, "--strategy-order");
+        boolean learn = Options.flag(args, "--learn-strategy-order");
+        if (file != null && learn) {
+            throw new IllegalArgumentException("--strategy-order and --learn-strategy-order exclude each other");
+        }
+        if (file != null) {
+            return load(Paths.get(file));
+        }
+        return learn ? learning() : DEFAULT;
+    }
+
+    private static int[][] defaultOrders() {
+        int[][] orders = new int[BUCKETS][];
+        Arrays.fill(orders, DEFAULT_ORDER);
+        return orders;
+    }
+
+    /**
+     * Bucket of a case. Each axis of the asteroid is classed as behind the start, between start and
+     * goal, or past the goal (after mirroring so the goal lies in the positive direction).
+     */
+    static int bucket(int goalX, int goalY, int asteroidX, int asteroidY) {
+        int column = axisSide(goalX, asteroidX);
+        int row = axisSide(goalY, asteroidY);
+        int distance = Math.max(Math.abs(goalX), Math.abs(goalY));
+        int band = Math.min(32 - Integer.numberOfLeadingZeros(distance >> 1), DISTANCE_BANDS - 1);
+        return (band * 3 + row) * 3 + column;
+    }
+
+    private static int axisSide(int goal, int asteroid) {
+        if (goal < 0) {
+            goal = -goal;
+            asteroid = -asteroid;
+        }
+        if (asteroid < 0) return 0;
+        return (asteroid <= goal) ? 1 : 2;
+    }
+
+    /**
+     * Fills order with the strategies to try for the bucket, lowest expected cost per success first;
+     * unseen strategies keep their default position relative to each other.
+     */
+    void order(int bucket, int[] order) {
+        if (frozen != null) {
+            System.arraycopy(frozen[bucket], 0, order, 0, STRATEGIES);
+            return;
+        }
+
+        // Smoothed so that untried strategies cost one candidate and succeed half the time
+        long[] keys = new long[STRATEGIES];
+        for (int strategy = 0; strategy < STRATEGIES; strategy++) {
+            int at = bucket * STRATEGIES + strategy;
+            double cost = (candidates.get(at) + 1.0) / (tries.get(at) + 1.0);
+            double rate = (wins.get(at) + 1.0) / (tries.get(at) + 2.0);
+            long scaled = (long) (cost / rate * 1024);
+            keys[strategy] = (scaled << 8) | strategy;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < STRATEGIES; i++) {
+            order[i] = (int) (keys[i] & 0xff);
+        }
+    }
+
+    // One attempt of strategy that checked the given number of candidate paths
+    void record(int bucket, int strategy, int checked, boolean won) {
+        if (frozen != null) {
+            return;
+        }
+        int at = bucket * STRATEGIES + strategy;
+        tries.incrementAndGet(at);
+        candidates.addAndGet(at, checked);
+        if (won) {
+            wins.incrementAndGet(at);
+        }
+    }
+
+    // One line per bucket: the bucket number followed by strategy names in the order to try them
+    void save(Path file) throws IOException {
+        int[] order = new int[STRATEGIES];
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                order(bucket, order);
+                writer.write(Integer.toString(bucket));
+                for (int strategy : order) {
+                    writer.write(" ");
+                    writer.write(NAMES[strategy]);
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    static StrategyRegistry load(Path file) throws IOException {
+        int[][] orders = defaultOrders();
+
+        List<String> names = Arrays.asList(NAMES);
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file)) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = line.trim().split("\\s+");
+            int bucket = Integer.parseInt(parts[0]);
+            if (bucket < 0 || bucket >= BUCKETS || parts.length != STRATEGIES + 1) {
+                throw new IOException(file + ":" + lineNumber + ": expected a bucket and " + STRATEGIES
+                        + " strategies");
+            }
+
+            int[] order = new int[STRATEGIES];
+            boolean[] seen = new boolean[STRATEGIES];
+            for (int i = 0; i < STRATEGIES; i++) {
+                int strategy = names.indexOf(parts[i + 1]);
+                if (strategy < 0 || seen[strategy]) {
+                    throw new IOException(file + ":" + lineNumber + ": bad strategy '" + parts[i + 1] + "'");
+                }
+                seen[strategy] = true;
+                order[i] = strategy;
+            }
+            orders[bucket] = order;
+        }
+
+        return new StrategyRegistry(orders);
+    }
+}